@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.AuthConfig;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Realistic request and response payloads shared by the benchmarks.
+ */
+final class BenchmarkPayloads {
+    static final String CALLBACK_URL = "https://gocd.example.com/go/plugin/cd.go.authorization.keycloak/authenticate";
+    static final String REALM = "gocd";
+    static final String EMAIL = "jane.doe@example.com";
+    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    private BenchmarkPayloads() {
+    }
+
+    static AuthConfig authConfigModel(String endpoint) {
+        return GSON.fromJson(authConfig(endpoint), AuthConfig.class);
+    }
+
+    static JsonObject authConfig(String endpoint) {
+        final JsonObject configuration = new JsonObject();
+        configuration.addProperty("KeycloakEndpoint", endpoint);
+        configuration.addProperty("KeycloakRealm", REALM);
+        configuration.addProperty("ClientId", "gocd-server");
+        configuration.addProperty("ClientSecret", "6c2b5c5d-1e2f-4d87-9b0e-5f3a4d9c1b2e");
+
+        final JsonObject authConfig = new JsonObject();
+        authConfig.addProperty("id", "keycloak");
+        authConfig.add("configuration", configuration);
+        return authConfig;
+    }
+
+    static JsonArray roles(int roleCount, int groupsPerRole) {
+        final JsonArray roles = new JsonArray();
+        for (int i = 0; i < roleCount; i++) {
+            final StringBuilder groups = new StringBuilder();
+            for (int j = 0; j < groupsPerRole; j++) {
+                groups.append(j == 0 ? "" : ",").append("group-").append((i + j) % (roleCount + groupsPerRole));
+            }
+
+            final JsonObject configuration = new JsonObject();
+            configuration.addProperty("Groups", groups.toString());
+            configuration.addProperty("Users", "user-" + i + "@example.com," + (i % 50 == 0 ? EMAIL : "other-" + i + "@example.com"));
+
+            final JsonObject role = new JsonObject();
+            role.addProperty("name", "role-" + i);
+            role.addProperty("auth_config_id", "keycloak");
+            role.add("configuration", configuration);
+            roles.add(role);
+        }
+        return roles;
+    }
+
+    static String authenticateUserRequestBody(String endpoint, int roleCount) {
+        final JsonObject credentials = new JsonObject();
+        credentials.addProperty("access_token", accessToken());
+        credentials.addProperty("token_type", "bearer");
+        credentials.addProperty("expires_in", 300);
+        credentials.addProperty("refresh_token", accessToken());
+
+        final JsonArray authConfigs = new JsonArray();
+        authConfigs.add(authConfig(endpoint));
+
+        final JsonObject body = new JsonObject();
+        body.add("credentials", credentials);
+        body.add("auth_configs", authConfigs);
+        body.add("role_configs", roles(roleCount, 3));
+        return body.toString();
+    }
+
+    static String userJSON(int groupCount) {
+        final JsonArray groups = new JsonArray();
+        for (int i = 0; i < groupCount; i++) {
+            groups.add("group-" + i);
+        }
+
+        final JsonObject user = new JsonObject();
+        user.addProperty("sub", "f1e0a7d2-3c4b-4a59-8e6f-7a8b9c0d1e2f");
+        user.addProperty("email", EMAIL);
+        user.addProperty("email_verified", true);
+        user.addProperty("name", "Jane Doe");
+        user.addProperty("given_name", "Jane");
+        user.addProperty("family_name", "Doe");
+        user.addProperty("preferred_username", "jane.doe");
+        user.addProperty("locale", "en");
+        user.addProperty("zoneinfo", "Europe/Berlin");
+        user.addProperty("updated_at", 1700000000);
+        user.add("groups", groups);
+        return user.toString();
+    }
+
+    static String introspectionJSON() {
+        final JsonObject introspection = new JsonObject();
+        introspection.addProperty("active", true);
+        introspection.addProperty("exp", System.currentTimeMillis() / 1000 + 3600);
+        introspection.addProperty("client_id", "gocd-server");
+        introspection.addProperty("username", "jane.doe");
+        return introspection.toString();
+    }
+
+    private static String accessToken() {
+        final StringBuilder token = new StringBuilder("eyJhbGciOiJSUzI1NiIsInR5cCIgOiAiSldUIn0.");
+        for (int i = 0; i < 24; i++) {
+            token.append("eyJleHAiOjE3MDAwMDAwMDB9");
+        }
+        return token.append(".c2lnbmF0dXJl").toString();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.AuthConfig;
+import cd.go.authorization.keycloak.models.Role;
+import com.google.gson.JsonElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeycloakAuthorizerBenchmark {
+    @Param({"10", "100", "1000", "5000"})
+    private int roleCount;
+
+    @Param({"5", "200"})
+    private int groupCount;
+
+    private final KeycloakAuthorizer authorizer = new KeycloakAuthorizer();
+    private KeycloakUser user;
+    private AuthConfig authConfig;
+    private List<Role> roles;
+
+    @Setup
+    public void setUp() {
+        user = KeycloakUser.fromJSON(BenchmarkPayloads.userJSON(groupCount));
+        authConfig = BenchmarkPayloads.authConfigModel("https://keycloak.example.com");
+        roles = new ArrayList<>();
+        for (JsonElement role : BenchmarkPayloads.roles(roleCount, 3)) {
+            roles.add(Role.fromJSON(role.toString()));
+        }
+    }
+
+    @Benchmark
+    public List<String> authorize() throws IOException {
+        return authorizer.authorize(user, authConfig, roles);
+    }
+}
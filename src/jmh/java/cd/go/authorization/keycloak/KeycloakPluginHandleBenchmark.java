@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import com.thoughtworks.go.plugin.api.request.DefaultGoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end authenticate-user through {@link KeycloakPlugin#handle} against a local {@link MockWebServer}
+ * standing in for Keycloak.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeycloakPluginHandleBenchmark {
+    @Param({"10", "1000"})
+    private int roleCount;
+
+    private MockWebServer server;
+    private KeycloakPlugin plugin;
+    private DefaultGoPluginApiRequest apiRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String userJSON = BenchmarkPayloads.userJSON(20);
+        final String introspectionJSON = BenchmarkPayloads.introspectionJSON();
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                final String path = request.getRequestUrl().encodedPath();
+                if (path.endsWith("/userinfo")) {
+                    return new MockResponse().setResponseCode(200).setBody(userJSON);
+                }
+                if (path.endsWith("/token/introspect")) {
+                    return new MockResponse().setResponseCode(200).setBody(introspectionJSON);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+
+        plugin = new KeycloakPlugin();
+        apiRequest = new DefaultGoPluginApiRequest("authorization", "2.0", "go.cd.authorization.authenticate-user");
+        apiRequest.setRequestBody(BenchmarkPayloads.authenticateUserRequestBody(server.url("/").toString(), roleCount));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public GoPluginApiResponse authenticateUser() throws Exception {
+        return plugin.handle(apiRequest);
+    }
+}
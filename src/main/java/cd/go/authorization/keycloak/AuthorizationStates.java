@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.utils.ExpiringCache;
+import cd.go.authorization.keycloak.utils.SecureTokens;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * OAuth state values issued with authorization redirects, kept until the callback or for 10 minutes, whichever
+ * comes first. Each state maps to the nonce sent along with it and the auth config whose realm the user was sent to.
+ */
+public class AuthorizationStates {
+    private static final int MAXIMUM_SIZE = 10_000;
+    static final long TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final AuthorizationStates STATES = new AuthorizationStates(System::currentTimeMillis);
+
+    private final ExpiringCache<String, Issued> states;
+    private final LongSupplier clock;
+
+    AuthorizationStates(LongSupplier clock) {
+        this.states = new ExpiringCache<>(MAXIMUM_SIZE, clock);
+        this.clock = clock;
+    }
+
+    public static AuthorizationStates instance() {
+        return STATES;
+    }
+
+    public Issued issue(String authConfigId) {
+        final Issued issued = new Issued(SecureTokens.next(), SecureTokens.next(), authConfigId);
+        states.put(issued.state, issued, clock.getAsLong() + TIME_TO_LIVE_MILLIS);
+        return issued;
+    }
+
+    public Issued consume(String state) {
+        return state == null ? null : states.remove(state);
+    }
+
+    public static class Issued {
+        private final String state;
+        private final String nonce;
+        private final String authConfigId;
+
+        Issued(String state, String nonce, String authConfigId) {
+            this.state = state;
+            this.nonce = nonce;
+            this.authConfigId = authConfigId;
+        }
+
+        public String state() {
+            return state;
+        }
+
+        public String nonce() {
+            return nonce;
+        }
+
+        public String authConfigId() {
+            return authConfigId;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Pre-encoded authorization redirect url of one auth config. Only the callback url, state and nonce vary
+ * between logins, so building a redirect is a handful of appends. Parameters keep the order and encoding
+ * {@link HttpUrl} would produce.
+ */
+class AuthorizationUrlTemplate {
+    private final KeycloakEndpoints endpoints;
+    private final String prefix;
+    private final String middle;
+    private volatile EncodedCallback encodedCallback;
+
+    AuthorizationUrlTemplate(KeycloakEndpoints endpoints, String clientId, String scope) {
+        this.endpoints = endpoints;
+        final String query = endpoints.authorization().newBuilder()
+                .addQueryParameter("client_id", clientId)
+                .addQueryParameter("redirect_uri", "")
+                .addQueryParameter("response_type", "code")
+                .addQueryParameter("scope", scope)
+                .addQueryParameter("state", "")
+                .build().toString();
+
+        final int redirectUri = query.indexOf("&redirect_uri=") + "&redirect_uri=".length();
+        this.prefix = query.substring(0, redirectUri);
+        this.middle = query.substring(redirectUri);
+    }
+
+    KeycloakEndpoints endpoints() {
+        return endpoints;
+    }
+
+    String url(String callbackUrl, String state, String nonce) {
+        final String encodedCallbackUrl = encode(callbackUrl);
+        return new StringBuilder(prefix.length() + encodedCallbackUrl.length() + middle.length() + state.length() + nonce.length() + 7)
+                .append(prefix)
+                .append(encodedCallbackUrl)
+                .append(middle)
+                .append(encodeValue(state))
+                .append("&nonce=")
+                .append(encodeValue(nonce))
+                .toString();
+    }
+
+    private String encode(String callbackUrl) {
+        final EncodedCallback current = encodedCallback;
+        if (current != null && current.callbackUrl.equals(callbackUrl)) {
+            return current.encoded;
+        }
+
+        final String encoded = encodeValue(callbackUrl);
+        encodedCallback = new EncodedCallback(callbackUrl, encoded);
+        return encoded;
+    }
+
+    private static String encodeValue(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '.')) {
+                final String query = new HttpUrl.Builder().scheme("http").host("localhost")
+                        .addQueryParameter("v", value).build().encodedQuery();
+                return query.substring("v=".length());
+            }
+        }
+        return value;
+    }
+
+    private static class EncodedCallback {
+        private final String callbackUrl;
+        private final String encoded;
+
+        private EncodedCallback(String callbackUrl, String encoded) {
+            this.callbackUrl = callbackUrl;
+            this.encoded = encoded;
+        }
+    }
+}
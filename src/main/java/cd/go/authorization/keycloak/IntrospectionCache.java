@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
+import cd.go.authorization.keycloak.utils.ExpiringCache;
+
+import static cd.go.authorization.keycloak.utils.Util.sha256;
+
+/**
+ * Active introspection results keyed by realm and a hash of the token. Entries expire together with the token.
+ */
+public class IntrospectionCache {
+    private static final int MAXIMUM_SIZE = 10_000;
+    private static final IntrospectionCache INTROSPECTION_CACHE = new IntrospectionCache(new ExpiringCache<>(MAXIMUM_SIZE));
+
+    static {
+        final PluginMetrics metrics = PluginMetrics.instance();
+        metrics.counter(PluginMetrics.INTROSPECTION_CACHE + PluginMetrics.HITS_SUFFIX, INTROSPECTION_CACHE::hits);
+        metrics.counter(PluginMetrics.INTROSPECTION_CACHE + PluginMetrics.MISSES_SUFFIX, INTROSPECTION_CACHE::misses);
+        metrics.gauge(PluginMetrics.INTROSPECTION_CACHE + ".size", INTROSPECTION_CACHE::size);
+    }
+
+    private final ExpiringCache<String, KeycloakIntrospectToken> cache;
+
+    IntrospectionCache(ExpiringCache<String, KeycloakIntrospectToken> cache) {
+        this.cache = cache;
+    }
+
+    public static IntrospectionCache instance() {
+        return INTROSPECTION_CACHE;
+    }
+
+    public KeycloakIntrospectToken get(String realmKey, String token) {
+        return cache.get(keyFor(realmKey, token));
+    }
+
+    public void put(String realmKey, String token, KeycloakIntrospectToken introspectToken) {
+        if (!introspectToken.getActive() || introspectToken.getExp() == null) {
+            return;
+        }
+
+        cache.put(keyFor(realmKey, token), introspectToken, introspectToken.getExp().longValue() * 1000);
+    }
+
+    public long hits() {
+        return cache.hits();
+    }
+
+    public long misses() {
+        return cache.misses();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private static String keyFor(String realmKey, String token) {
+        return realmKey + '|' + sha256(token);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.User;
+import cd.go.authorization.keycloak.utils.JsonStreams;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static cd.go.authorization.keycloak.utils.Util.GSON;
+import static cd.go.authorization.keycloak.utils.Util.isBlank;
+import static cd.go.authorization.keycloak.utils.Util.isNotBlank;
+
+@JsonAdapter(KeycloakAdminUser.Adapter.class)
+public class KeycloakAdminUser {
+    private static final Adapter ADAPTER = new Adapter();
+
+    @Expose
+    @SerializedName("id")
+    private String id;
+
+    @Expose
+    @SerializedName("username")
+    private String username;
+
+    @Expose
+    @SerializedName("email")
+    private String email;
+
+    @Expose
+    @SerializedName("firstName")
+    private String firstName;
+
+    @Expose
+    @SerializedName("lastName")
+    private String lastName;
+
+    @Expose
+    @SerializedName("enabled")
+    private boolean enabled = true;
+
+    KeycloakAdminUser() {
+    }
+
+    public KeycloakAdminUser(String username, String email, String firstName, String lastName) {
+        this.username = username;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String displayName() {
+        final String name = ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        return isNotBlank(name) ? name : username;
+    }
+
+    public User toUser() {
+        if (isBlank(email)) {
+            return null;
+        }
+        return new User(email, displayName(), email);
+    }
+
+    public static List<KeycloakAdminUser> fromJSONArray(String json) {
+        return GSON.fromJson(json, new TypeToken<List<KeycloakAdminUser>>() {
+        }.getType());
+    }
+
+    public static List<KeycloakAdminUser> fromJSONArray(Reader reader) {
+        return JsonStreams.read(new TypeAdapter<List<KeycloakAdminUser>>() {
+            @Override
+            public void write(JsonWriter out, List<KeycloakAdminUser> users) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<KeycloakAdminUser> read(JsonReader in) throws IOException {
+                final List<KeycloakAdminUser> users = new ArrayList<>();
+                if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                    in.skipValue();
+                    return users;
+                }
+
+                in.beginArray();
+                while (in.hasNext()) {
+                    final KeycloakAdminUser user = ADAPTER.read(in);
+                    if (user != null) {
+                        users.add(user);
+                    }
+                }
+                in.endArray();
+                return users;
+            }
+        }, reader);
+    }
+
+    static class Adapter extends TypeAdapter<KeycloakAdminUser> {
+        @Override
+        public void write(JsonWriter out, KeycloakAdminUser user) throws IOException {
+            out.beginObject();
+            out.name("id").value(user.id);
+            out.name("username").value(user.username);
+            out.name("email").value(user.email);
+            out.name("firstName").value(user.firstName);
+            out.name("lastName").value(user.lastName);
+            out.name("enabled").value(user.enabled);
+            out.endObject();
+        }
+
+        @Override
+        public KeycloakAdminUser read(JsonReader in) throws IOException {
+            if (!JsonStreams.beginObject(in)) {
+                return null;
+            }
+
+            final KeycloakAdminUser user = new KeycloakAdminUser();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        user.id = JsonStreams.nextString(in);
+                        break;
+                    case "username":
+                        user.username = JsonStreams.nextString(in);
+                        break;
+                    case "email":
+                        user.email = JsonStreams.nextString(in);
+                        break;
+                    case "firstName":
+                        user.firstName = JsonStreams.nextString(in);
+                        break;
+                    case "lastName":
+                        user.lastName = JsonStreams.nextString(in);
+                        break;
+                    case "enabled":
+                        user.enabled = JsonStreams.nextBoolean(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
+}
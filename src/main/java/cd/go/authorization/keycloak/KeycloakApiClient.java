@@ -16,154 +16,567 @@
 
 package cd.go.authorization.keycloak;
 
+import cd.go.authorization.keycloak.exceptions.KeycloakUnavailableException;
+import cd.go.authorization.keycloak.exceptions.TokenExpiredException;
+import cd.go.authorization.keycloak.jwt.JwksCache;
+import cd.go.authorization.keycloak.jwt.Jwt;
+import cd.go.authorization.keycloak.jwt.JwtVerifier;
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
 import cd.go.authorization.keycloak.models.KeycloakConfiguration;
 import cd.go.authorization.keycloak.models.TokenInfo;
-import cd.go.authorization.keycloak.requests.UserAuthenticationRequest;
-import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
-import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import cd.go.authorization.keycloak.utils.CircuitBreaker;
+import cd.go.authorization.keycloak.utils.Futures;
+import cd.go.authorization.keycloak.utils.RetryBudget;
+import cd.go.authorization.keycloak.utils.RetryPolicy;
+import cd.go.authorization.keycloak.utils.SingleFlight;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
 import static cd.go.authorization.keycloak.utils.Util.isBlank;
 import static cd.go.authorization.keycloak.utils.Util.isNotBlank;
+import static cd.go.authorization.keycloak.utils.Util.sha256;
 import static java.text.MessageFormat.format;
 
 public class KeycloakApiClient {
     private static final String API_ERROR_MSG = "Api call to `{0}` failed with error: `{1}`";
+    private static final String AUTHORIZATION_SCOPE = "openid profile email groups roles";
+    private static final String UNAVAILABLE_ERROR_MSG = "Keycloak at `{0}` is unavailable, not retrying for {1} seconds.";
+    private static final SingleFlight<String, KeycloakIntrospectToken> INTROSPECTIONS = new SingleFlight<>();
+    private static final SingleFlight<String, KeycloakUser> USER_PROFILES = new SingleFlight<>();
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = new HashSet<>(Arrays.asList(502, 503, 504));
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(3, 100, 1000, new RetryBudget(0.1, 10));
+    private static final PluginMetrics METRICS = PluginMetrics.instance();
+    private static final long STORED_PROFILE_TTL_MILLIS = TimeUnit.HOURS.toMillis(12);
+    private static final long SERVICE_ACCOUNT_TOKEN_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    static {
+        METRICS.counter("single-flight.coalesced", KeycloakApiClient::coalescedCalls);
+        METRICS.counter("retries.rejected", RETRY_POLICY.budget()::rejected);
+    }
     private final KeycloakConfiguration keycloakConfiguration;
     private final OkHttpClient httpClient;
+    private final OidcDiscovery discovery;
+    private final TokenRefresher tokenRefresher;
+    private final KeycloakCircuitBreakers circuitBreakers;
+    private final KeycloakDiskCache diskCache;
+    private volatile AuthorizationUrlTemplate authorizationUrlTemplate;
+    private volatile EndpointsVerifier tokenVerifier;
 
     public KeycloakApiClient(KeycloakConfiguration keycloakConfiguration) {
-        this(keycloakConfiguration,
-                new OkHttpClient.Builder()
-                        .connectTimeout(10, TimeUnit.SECONDS)
-                        .writeTimeout(10, TimeUnit.SECONDS)
-                        .readTimeout(30, TimeUnit.SECONDS)
-                        .build()
-        );
+        this(keycloakConfiguration, KeycloakHttpClients.instance().clientFor(keycloakConfiguration));
     }
 
     public KeycloakApiClient(KeycloakConfiguration keycloakConfiguration, OkHttpClient httpClient) {
+        this(keycloakConfiguration, httpClient, OidcDiscovery.instance(), TokenRefresher.instance(), KeycloakCircuitBreakers.instance());
+    }
+
+    KeycloakApiClient(KeycloakConfiguration keycloakConfiguration, OkHttpClient httpClient, OidcDiscovery discovery,
+                      TokenRefresher tokenRefresher, KeycloakCircuitBreakers circuitBreakers) {
+        this(keycloakConfiguration, httpClient, discovery, tokenRefresher, circuitBreakers, KeycloakDiskCache.instance());
+    }
+
+    KeycloakApiClient(KeycloakConfiguration keycloakConfiguration, OkHttpClient httpClient, OidcDiscovery discovery,
+                      TokenRefresher tokenRefresher, KeycloakCircuitBreakers circuitBreakers, KeycloakDiskCache diskCache) {
         this.keycloakConfiguration = keycloakConfiguration;
         this.httpClient = httpClient;
+        this.discovery = discovery;
+        this.tokenRefresher = tokenRefresher;
+        this.circuitBreakers = circuitBreakers;
+        this.diskCache = diskCache;
     }
 
     public void verifyConnection() throws Exception {
         //TODO:
     }
 
-    public String authorizationServerUrl(String callbackUrl) throws Exception {
+    public String authorizationServerUrl(String callbackUrl, String authConfigId) throws Exception {
         LOG.debug("[KeycloakApiClient] Generating Keycloak oauth url.");
-        String realm = keycloakConfiguration.keycloakRealm();
-
-        return HttpUrl.parse(keycloakConfiguration.keycloakEndpoint())
-                .newBuilder()
-                .addPathSegments("auth")
-                .addPathSegments("realms")
-                .addPathSegments(realm)
-                .addPathSegments("protocol")
-                .addPathSegments("openid-connect")
-                .addPathSegments("auth")
-                .addQueryParameter("client_id", keycloakConfiguration.clientId())
-                .addQueryParameter("redirect_uri", callbackUrl)
-                .addQueryParameter("response_type", "code")
-                .addQueryParameter("scope", "openid profile email groups roles")
-                .addQueryParameter("state", UUID.randomUUID().toString())
-                .addQueryParameter("nonce", UUID.randomUUID().toString())
-                .build().toString();
+        final KeycloakEndpoints endpoints = discovery.currentEndpointsFor(keycloakConfiguration.keycloakEndpoint(),
+                keycloakConfiguration.keycloakRealm(), this::fetchDiscoveryDocument);
+
+        AuthorizationUrlTemplate template = authorizationUrlTemplate;
+        if (template == null || template.endpoints() != endpoints) {
+            template = new AuthorizationUrlTemplate(endpoints, keycloakConfiguration.clientId(), AUTHORIZATION_SCOPE);
+            authorizationUrlTemplate = template;
+        }
+
+        final AuthorizationStates.Issued issued = AuthorizationStates.instance().issue(authConfigId);
+        return template.url(callbackUrl, issued.state(), issued.nonce());
+    }
+
+    public String issuer() throws IOException {
+        return endpoints().issuer();
     }
 
     public TokenInfo fetchAccessToken(Map<String, String> params) throws Exception {
+        return Futures.await(fetchAccessTokenAsync(params));
+    }
+
+    public CompletableFuture<TokenInfo> fetchAccessTokenAsync(Map<String, String> params) {
         final String code = params.get("code");
         if (isBlank(code)) {
-            throw new RuntimeException("[KeycloakApiClient] Authorization code must not be null.");
+            return Futures.failed(new RuntimeException("[KeycloakApiClient] Authorization code must not be null."));
         }
 
         LOG.debug("[KeycloakApiClient] Fetching access token using authorization code.");
-        String realm = keycloakConfiguration.keycloakRealm();
-
-        final String accessTokenUrl = HttpUrl.parse(keycloakConfiguration.keycloakEndpoint())
-                .newBuilder()
-                .addPathSegments("auth")
-                .addPathSegments("realms")
-                .addPathSegments(realm)
-                .addPathSegments("protocol")
-                .addPathSegments("openid-connect")
-                .addPathSegments("token")
-                .build().toString();
+        return endpointsAsync().thenCompose(endpoints -> {
+            final FormBody formBody = new FormBody.Builder()
+                    .add("client_id", keycloakConfiguration.clientId())
+                    .add("client_secret", keycloakConfiguration.clientSecret())
+                    .add("code", code)
+                    .add("grant_type", "authorization_code")
+                    .add("redirect_uri", CallbackURL.instance().getCallbackURL()).build();
+
+            final Request request = new Request.Builder()
+                    .url(endpoints.token())
+                    .addHeader("Accept", "application/json")
+                    .post(formBody)
+                    .build();
+
+            return METRICS.time(PluginMetrics.KEYCLOAK_TOKEN,
+                    executeAsync(PluginMetrics.KEYCLOAK_TOKEN, request, false, response -> TokenInfo.fromJSON(response.body().charStream())));
+        }).thenApply(tokenInfo -> {
+            tokenRefresher.track(tokenInfo, this::fetchRefreshToken);
+            return tokenInfo;
+        });
+    }
+
+    public KeycloakUser userProfile(TokenInfo tokenInfo) throws Exception {
+        return Futures.await(userProfileAsync(tokenInfo));
+    }
 
+    public CompletableFuture<KeycloakUser> userProfileAsync(TokenInfo tokenInfo) {
+        validateTokenInfo(tokenInfo);
+        if (!diskCache.enabled()) {
+            return fetchUserProfileAsync(tokenInfo);
+        }
+
+        final String profileKey = KeycloakHttpClients.keyFor(keycloakConfiguration) + '|' + sha256(tokenInfo.accessToken());
+        final CompletableFuture<KeycloakUser> result = new CompletableFuture<>();
+        fetchUserProfileAsync(tokenInfo).whenComplete((user, error) -> {
+            if (error == null) {
+                final long expiresAt = Math.min(System.currentTimeMillis() + STORED_PROFILE_TTL_MILLIS, tokenRefresher.expiresAt(tokenInfo));
+                diskCache.put(KeycloakDiskCache.Kind.PROFILE, profileKey, user.toJSON(), expiresAt);
+                result.complete(user);
+                return;
+            }
+
+            final Throwable cause = Futures.unwrap(error);
+            final String stored = cause instanceof IOException || cause instanceof KeycloakUnavailableException
+                    ? diskCache.get(KeycloakDiskCache.Kind.PROFILE, profileKey) : null;
+            if (stored != null) {
+                LOG.warn("[KeycloakApiClient] Keycloak is unreachable, using the stored profile of this session: {}", cause.getMessage());
+                result.complete(KeycloakUser.fromJSON(stored));
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<KeycloakUser> fetchUserProfileAsync(TokenInfo tokenInfo) {
+        final TokenInfo current = tokenRefresher.current(tokenInfo);
+        METRICS.cacheLookup(PluginMetrics.REFRESHED_TOKENS, current != null);
+        if (current != null) {
+            return userInfoAsync(current.accessToken());
+        }
+
+        return isTokenActiveAsync(tokenInfo.accessToken()).thenCompose(active -> {
+            if (active) {
+                return userInfoAsync(tokenInfo.accessToken());
+            }
+
+            LOG.debug("[KeycloakApiClient] Access token is not active, refreshing it.");
+            return fetchRefreshTokenAsync(tokenInfo.refreshToken()).thenCompose(refreshed -> {
+                tokenRefresher.track(tokenInfo, refreshed, this::fetchRefreshToken);
+                return userInfoAsync(refreshed.accessToken());
+            });
+        });
+    }
+
+    private CompletableFuture<KeycloakUser> userInfoAsync(String accessToken) {
+        LOG.debug("[KeycloakApiClient] Fetching user profile using access token.");
+        return endpointsAsync().thenCompose(endpoints -> {
+            final HttpUrl userProfileUrl = endpoints.userinfo();
+            final Request request = new Request.Builder()
+                    .url(userProfileUrl)
+                    .addHeader("Authorization", "Bearer " + accessToken)
+                    .get()
+                    .build();
+
+            return USER_PROFILES.executeAsync(userProfileUrl.toString() + '|' + accessToken,
+                    () -> METRICS.time(PluginMetrics.KEYCLOAK_USERINFO,
+                            executeAsync(PluginMetrics.KEYCLOAK_USERINFO, request, true, response -> KeycloakUser.fromJSON(response.body().charStream()))));
+        });
+    }
+
+    public KeycloakUserDirectory.PageFetcher userPages() {
+        final TokenInfo[] serviceAccountToken = new TokenInfo[1];
+        final long[] refreshAt = new long[1];
+        return (first, max) -> {
+            final long now = System.currentTimeMillis();
+            if (serviceAccountToken[0] == null || now >= refreshAt[0]) {
+                serviceAccountToken[0] = fetchServiceAccountToken();
+                final long lifetime = TimeUnit.SECONDS.toMillis(serviceAccountToken[0].expiresIn());
+                refreshAt[0] = lifetime > 0 ? now + lifetime - Math.min(SERVICE_ACCOUNT_TOKEN_MARGIN_MILLIS, lifetime / 2) : Long.MAX_VALUE;
+            }
+            return users(serviceAccountToken[0], first, max);
+        };
+    }
+
+    TokenInfo fetchServiceAccountToken() throws IOException {
+        LOG.debug("[KeycloakApiClient] Fetching service account token.");
+        final KeycloakEndpoints endpoints = endpoints();
         final FormBody formBody = new FormBody.Builder()
                 .add("client_id", keycloakConfiguration.clientId())
                 .add("client_secret", keycloakConfiguration.clientSecret())
-                .add("code", code)
-                .add("grant_type", "authorization_code")
-                .add("redirect_uri", CallbackURL.instance().getCallbackURL()).build();
+                .add("grant_type", "client_credentials")
+                .build();
 
         final Request request = new Request.Builder()
-                .url(accessTokenUrl)
+                .url(endpoints.token())
                 .addHeader("Accept", "application/json")
                 .post(formBody)
                 .build();
 
-        return executeRequest(request, response -> TokenInfo.fromJSON(response.body().string()));
+        return Futures.await(executeAsync(PluginMetrics.KEYCLOAK_TOKEN, request, false, response -> TokenInfo.fromJSON(response.body().charStream())));
     }
 
-    public KeycloakUser userProfile(TokenInfo tokenInfo) throws Exception {
-        validateTokenInfo(tokenInfo);
-        String accessToken = tokenInfo.accessToken();
-
-        // Check status of token
-        LOG.debug("[KeycloakApiClient] Token Before: " + tokenInfo.accessToken());
-        if (!introspectToken(tokenInfo.accessToken())) {
-            LOG.debug("[KeycloakApiClient] Token status: Not Active");
-            if (fetchRefreshToken(tokenInfo.refreshToken()).responseCode() == 200) {
-                LOG.debug("[KeycloakApiClient] Token After: " + tokenInfo.accessToken());
-                accessToken = tokenInfo.accessToken();
-            }
+    List<KeycloakAdminUser> users(TokenInfo serviceAccountToken, int first, int max) throws IOException {
+        LOG.debug("[KeycloakApiClient] Fetching users {} to {}.", first, first + max);
+        final HttpUrl usersUrl = endpoints().users();
+        if (usersUrl == null) {
+            throw new IOException("[KeycloakApiClient] Could not derive the admin users url from the realm issuer.");
         }
 
-        LOG.debug("[KeycloakApiClient] Fetching user profile using access token.");
-        String realm = keycloakConfiguration.keycloakRealm();
-
-        final String userProfileUrl = HttpUrl.parse(keycloakConfiguration.keycloakEndpoint())
-                .newBuilder()
-                .addPathSegments("auth")
-                .addPathSegments("realms")
-                .addPathSegments(realm)
-                .addPathSegments("protocol")
-                .addPathSegments("openid-connect")
-                .addPathSegments("userinfo")
-                .toString();
-
         final Request request = new Request.Builder()
-                .url(userProfileUrl)
-                .addHeader("Authorization", "Bearer " + accessToken)
+                .url(usersUrl.newBuilder()
+                        .addQueryParameter("briefRepresentation", "true")
+                        .addQueryParameter("first", String.valueOf(first))
+                        .addQueryParameter("max", String.valueOf(max))
+                        .build())
+                .addHeader("Authorization", "Bearer " + serviceAccountToken.accessToken())
+                .addHeader("Accept", "application/json")
                 .get()
                 .build();
 
-        return executeRequest(request, response -> KeycloakUser.fromJSON(response.body().string()));
+        return Futures.await(METRICS.time(PluginMetrics.KEYCLOAK_USERS,
+                executeAsync(PluginMetrics.KEYCLOAK_USERS, request, true, response -> KeycloakAdminUser.fromJSONArray(response.body().charStream()))));
+    }
+
+    public static long coalescedCalls() {
+        return INTROSPECTIONS.coalesced() + USER_PROFILES.coalesced();
+    }
+
+    public KeycloakUser userProfileFromIdToken(TokenInfo tokenInfo) throws Exception {
+        validateTokenInfo(tokenInfo);
+
+        LOG.debug("[KeycloakApiClient] Reading user profile from the id token.");
+        final Jwt idToken = tokenVerifier().verify(tokenInfo.idToken());
+
+        return KeycloakUser.fromJSON(idToken.claimsJSON());
     }
 
     private interface Callback<T> {
         T onResponse(Response response) throws IOException;
     }
 
-    private <T> T executeRequest(Request request, Callback<T> callback) throws IOException {
-        final Response response = httpClient.newCall(request).execute();
+    private <T> CompletableFuture<T> executeAsync(String metric, Request request, boolean idempotent, Callback<T> callback) {
+        RETRY_POLICY.onRequest();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        executeAttempt(metric, nodes(), request, idempotent, callback, 1, result);
+        return result;
+    }
+
+    private <T> void executeAttempt(String metric, KeycloakNodes nodes, Request request, boolean idempotent, Callback<T> callback, int attempt, CompletableFuture<T> result) {
+        final long startedAt = System.nanoTime();
+        final CompletableFuture<Response> attemptResponse = idempotent ? hedgedAttempt(nodes, request) : attempt(nodes, request);
+        attemptResponse.whenComplete((response, error) -> {
+            recordAttempt(metric, System.nanoTime() - startedAt, error != null || response.code() >= 500);
+            if (error != null) {
+                final Throwable cause = Futures.unwrap(error);
+                if (cause instanceof IOException && idempotent && RETRY_POLICY.canRetry(attempt)) {
+                    LOG.debug("[KeycloakApiClient] Retrying call to {} after: {}", request.url().encodedPath(), cause.getMessage());
+                    retry(metric, nodes, request, callback, attempt, result);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+                return;
+            }
 
-        if (!response.isSuccessful()) {
-            final String responseBody = response.body().string();
-            final String errorMessage = isNotBlank(responseBody) ? responseBody : response.message();
-            throw new RuntimeException(format(API_ERROR_MSG, request.url().encodedPath(), errorMessage));
+            if (RETRYABLE_STATUS_CODES.contains(response.code()) && idempotent && RETRY_POLICY.canRetry(attempt)) {
+                LOG.debug("[KeycloakApiClient] Retrying call to {} after status {}", request.url().encodedPath(), response.code());
+                response.close();
+                retry(metric, nodes, request, callback, attempt, result);
+                return;
+            }
+
+            try {
+                if (!response.isSuccessful()) {
+                    final String responseBody = response.body().string();
+                    final String errorMessage = isNotBlank(responseBody) ? responseBody : response.message();
+                    throw new RuntimeException(format(API_ERROR_MSG, request.url().encodedPath(), errorMessage));
+                }
+
+                result.complete(callback.onResponse(response));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                response.close();
+            }
+        });
+    }
+
+    private <T> void retry(String metric, KeycloakNodes nodes, Request request, Callback<T> callback, int attempt, CompletableFuture<T> result) {
+        CompletableFuture.delayedExecutor(RETRY_POLICY.backoffMillis(attempt), TimeUnit.MILLISECONDS)
+                .execute(() -> executeAttempt(metric, nodes, request, true, callback, attempt + 1, result));
+    }
+
+    private static void recordAttempt(String metric, long elapsedNanos, boolean failed) {
+        METRICS.histogram(metric + PluginMetrics.ATTEMPT_SUFFIX).record(elapsedNanos);
+        if (failed) {
+            METRICS.increment(metric + PluginMetrics.ATTEMPT_SUFFIX + PluginMetrics.ERRORS_SUFFIX);
         }
+    }
 
-        return callback.onResponse(response);
+    private CompletableFuture<Response> attempt(KeycloakNodes nodes, Request request) {
+        return attempt(nodes, request, null).response;
+    }
+
+    private CompletableFuture<Response> hedgedAttempt(KeycloakNodes nodes, Request request) {
+        if (nodes.size() < 2 || nodes.nodeFor(request.url()) == null) {
+            return attempt(nodes, request);
+        }
+
+        final CompletableFuture<Response> winner = new CompletableFuture<>();
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        final InFlightAttempt primary = attempt(nodes, request, null);
+        final InFlightAttempt[] hedge = new InFlightAttempt[1];
+        race(primary, winner, outstanding, () -> hedge[0]);
+
+        CompletableFuture.delayedExecutor(nodes.hedgeDelayMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (winner.isDone() || outstanding.getAndUpdate(count -> count > 0 ? count + 1 : count) == 0) {
+                return;
+            }
+
+            hedge[0] = attempt(nodes, request, primary.node);
+            LOG.debug("[KeycloakApiClient] No response from {} yet, hedging call to {}.", primary.node, hedge[0].node);
+            race(hedge[0], winner, outstanding, () -> primary);
+        });
+        return winner;
+    }
+
+    private interface Other {
+        InFlightAttempt get();
+    }
+
+    private static void race(InFlightAttempt attempt, CompletableFuture<Response> winner, AtomicInteger outstanding, Other other) {
+        attempt.response.whenComplete((response, error) -> {
+            final boolean failed = error != null || response.code() >= 500;
+            if (failed && outstanding.decrementAndGet() > 0) {
+                if (response != null) {
+                    response.close();
+                }
+                return;
+            }
+
+            final boolean won = error != null ? winner.completeExceptionally(error) : winner.complete(response);
+            if (won) {
+                final InFlightAttempt loser = other.get();
+                if (loser != null) {
+                    loser.cancel();
+                }
+            } else if (response != null) {
+                response.close();
+            }
+        });
+    }
+
+    private InFlightAttempt attempt(KeycloakNodes nodes, Request request, KeycloakNodes.Node excluded) {
+        final KeycloakNodes.Node node;
+        try {
+            node = acquire(nodes, request, excluded);
+        } catch (KeycloakUnavailableException e) {
+            return new InFlightAttempt(null, null, Futures.failed(e));
+        }
+
+        return send(nodes, node, rebase(request, node));
+    }
+
+    private InFlightAttempt send(KeycloakNodes nodes, KeycloakNodes.Node node, Request request) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        final long startedAt = System.nanoTime();
+        final Call call = httpClient.newCall(request);
+        startedOn(node);
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                finishedOn(node);
+                if (call.isCanceled()) {
+                    circuitBreakers.breakerFor(request.url()).onCancel();
+                } else {
+                    onAttemptFailure(nodes, node, request, System.nanoTime() - startedAt);
+                }
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                finishedOn(node);
+                onAttemptResponse(nodes, node, request, response, System.nanoTime() - startedAt);
+                future.complete(response);
+            }
+        });
+        return new InFlightAttempt(node, call, future);
+    }
+
+    private KeycloakNodes.Node acquire(KeycloakNodes nodes, Request request, KeycloakNodes.Node excluded) {
+        if (nodes.nodeFor(request.url()) == null) {
+            acquire(request.url());
+            return null;
+        }
+
+        KeycloakUnavailableException rejected = null;
+        for (KeycloakNodes.Node node : nodes.select(nodes.size(), this::isAvailable)) {
+            if (node == excluded) {
+                continue;
+            }
+            try {
+                acquire(node.base());
+                return node;
+            } catch (KeycloakUnavailableException e) {
+                rejected = rejected == null ? e : rejected;
+            }
+        }
+        throw rejected != null ? rejected : unavailable(excluded.base(), circuitBreakers.breakerFor(excluded.base()));
+    }
+
+    private void acquire(HttpUrl url) {
+        final CircuitBreaker circuitBreaker = circuitBreakers.breakerFor(url);
+        if (!circuitBreaker.tryAcquire()) {
+            throw unavailable(url, circuitBreaker);
+        }
+    }
+
+    private static KeycloakUnavailableException unavailable(HttpUrl url, CircuitBreaker circuitBreaker) {
+        return new KeycloakUnavailableException(format(UNAVAILABLE_ERROR_MSG, KeycloakCircuitBreakers.keyFor(url),
+                TimeUnit.MILLISECONDS.toSeconds(circuitBreaker.retryAfterMillis())));
+    }
+
+    private void onAttemptFailure(KeycloakNodes nodes, KeycloakNodes.Node node, Request request, long elapsedNanos) {
+        recordFailure(circuitBreakers.breakerFor(request.url()), request);
+        if (node != null) {
+            nodes.recordFailure(node, elapsedNanos);
+        }
+    }
+
+    private void onAttemptResponse(KeycloakNodes nodes, KeycloakNodes.Node node, Request request, Response response, long elapsedNanos) {
+        if (response.code() >= 500) {
+            recordFailure(circuitBreakers.breakerFor(request.url()), request);
+            if (node != null) {
+                nodes.recordFailure(node, elapsedNanos);
+            }
+        } else {
+            circuitBreakers.breakerFor(request.url()).onSuccess();
+            if (node != null) {
+                nodes.recordSuccess(node, elapsedNanos);
+            }
+        }
+    }
+
+    private void recordFailure(CircuitBreaker circuitBreaker, Request request) {
+        final CircuitBreaker.State previousState = circuitBreaker.state();
+        circuitBreaker.onFailure();
+        if (previousState != CircuitBreaker.State.OPEN && circuitBreaker.state() == CircuitBreaker.State.OPEN) {
+            LOG.warn("[KeycloakApiClient] Keycloak at {} is failing, failing fast for the next {} seconds.",
+                    KeycloakCircuitBreakers.keyFor(request.url()), TimeUnit.MILLISECONDS.toSeconds(circuitBreaker.retryAfterMillis()));
+        }
+    }
+
+    private boolean isAvailable(KeycloakNodes.Node node) {
+        return circuitBreakers.breakerFor(node.base()).isAvailable();
+    }
+
+    private static Request rebase(Request request, KeycloakNodes.Node node) {
+        return node == null ? request : request.newBuilder().url(node.rebase(request.url())).build();
+    }
+
+    private static void startedOn(KeycloakNodes.Node node) {
+        if (node != null) {
+            node.started();
+        }
+    }
+
+    private static void finishedOn(KeycloakNodes.Node node) {
+        if (node != null) {
+            node.finished();
+        }
+    }
+
+    private KeycloakNodes nodes() {
+        final List<String> endpoints = keycloakConfiguration.keycloakEndpoints();
+        return KeycloakNodes.forEndpoints(endpoints == null || endpoints.isEmpty()
+                ? Collections.singletonList(keycloakConfiguration.keycloakEndpoint()) : endpoints);
+    }
+
+    private static class EndpointsVerifier {
+        private final KeycloakEndpoints endpoints;
+        private final JwtVerifier verifier;
+
+        private EndpointsVerifier(KeycloakEndpoints endpoints, JwtVerifier verifier) {
+            this.endpoints = endpoints;
+            this.verifier = verifier;
+        }
+    }
+
+    private static class InFlightAttempt {
+        private final KeycloakNodes.Node node;
+        private final Call call;
+        private final CompletableFuture<Response> response;
+
+        private InFlightAttempt(KeycloakNodes.Node node, Call call, CompletableFuture<Response> response) {
+            this.node = node;
+            this.call = call;
+            this.response = response;
+        }
+
+        private void cancel() {
+            if (call != null) {
+                call.cancel();
+            }
+        }
+    }
+
+    private KeycloakEndpoints endpoints() throws IOException {
+        return discovery.endpointsFor(keycloakConfiguration.keycloakEndpoint(), keycloakConfiguration.keycloakRealm(), this::fetchDiscoveryDocument);
+    }
+
+    private CompletableFuture<KeycloakEndpoints> endpointsAsync() {
+        return discovery.endpointsForAsync(keycloakConfiguration.keycloakEndpoint(), keycloakConfiguration.keycloakRealm(), this::fetchDiscoveryDocument);
+    }
+
+    private String fetchDiscoveryDocument(HttpUrl documentUrl) throws IOException {
+        LOG.debug("[KeycloakApiClient] Fetching OpenID Connect discovery document.");
+
+        final Request request = new Request.Builder()
+                .url(documentUrl)
+                .addHeader("Accept", "application/json")
+                .get()
+                .build();
+
+        return Futures.await(executeAsync(PluginMetrics.KEYCLOAK_DISCOVERY, request, true, response -> response.body().string()));
     }
 
     private void validateTokenInfo(TokenInfo tokenInfo) {
@@ -172,77 +585,110 @@ public class KeycloakApiClient {
         }
     }
 
-    public Boolean introspectToken(String token) throws Exception {
+    private CompletableFuture<Boolean> isTokenActiveAsync(String accessToken) {
+        if (keycloakConfiguration.localTokenValidation()) {
+            try {
+                tokenVerifier().verify(accessToken);
+                return CompletableFuture.completedFuture(true);
+            } catch (TokenExpiredException e) {
+                return CompletableFuture.completedFuture(false);
+            } catch (Exception e) {
+                LOG.warn("[KeycloakApiClient] Local token validation failed, falling back to introspection: {}", e.getMessage());
+            }
+        }
 
-        LOG.debug("[KeycloakApiClient] Fetching status of the access token.");
-        String realm = keycloakConfiguration.keycloakRealm();
-        String client = keycloakConfiguration.clientId();
-        String secret = keycloakConfiguration.clientSecret();
-        String basicEncode = Base64.getEncoder().encodeToString((client + ":" + secret).getBytes());
+        return introspectTokenAsync(accessToken);
+    }
 
-        final String introspectUrl = HttpUrl.parse(keycloakConfiguration.keycloakEndpoint())
-                .newBuilder()
-                .addPathSegments("auth")
-                .addPathSegments("realms")
-                .addPathSegments(realm)
-                .addPathSegments("protocol")
-                .addPathSegments("openid-connect")
-                .addPathSegments("token")
-                .addPathSegments("introspect")
-                .toString();
+    JwtVerifier tokenVerifier() throws IOException {
+        final KeycloakEndpoints endpoints = endpoints();
+        EndpointsVerifier verifier = tokenVerifier;
+        if (verifier == null || verifier.endpoints != endpoints) {
+            final HttpUrl jwksUrl = endpoints.jwks();
+            verifier = new EndpointsVerifier(endpoints, new JwtVerifier(endpoints.issuer(), keycloakConfiguration.clientId(),
+                    JwksCache.forUrl(jwksUrl.toString()), () -> fetchJwks(jwksUrl)));
+            tokenVerifier = verifier;
+        }
 
-        final FormBody formBody = new FormBody.Builder()
-                .add("token", token)
-                .build();
+        return verifier.verifier;
+    }
+
+    private String fetchJwks(HttpUrl jwksUrl) throws IOException {
+        LOG.debug("[KeycloakApiClient] Fetching realm signing keys.");
 
         final Request request = new Request.Builder()
-                .url(introspectUrl)
-                .addHeader("Authorization", "Basic " + basicEncode)
-                .post(formBody)
+                .url(jwksUrl)
+                .addHeader("Accept", "application/json")
+                .get()
                 .build();
 
-        KeycloakIntrospectToken getStatus = executeRequest(request, response -> KeycloakIntrospectToken.fromJSON(response.body().string()));
-
-        // Check token status and return true if state ok.
-        if (getStatus.getActive()) {
-            return true;
-        }
+        return Futures.await(executeAsync(PluginMetrics.KEYCLOAK_JWKS, request, true, response -> response.body().string()));
+    }
 
-        return false;
+    public Boolean introspectToken(String token) throws Exception {
+        return Futures.await(introspectTokenAsync(token));
     }
 
-    public GoPluginApiResponse fetchRefreshToken(String refresh_token) throws Exception {
+    public CompletableFuture<Boolean> introspectTokenAsync(String token) {
+        final String realmKey = KeycloakHttpClients.keyFor(keycloakConfiguration);
+        final KeycloakIntrospectToken cachedStatus = IntrospectionCache.instance().get(realmKey, token);
+        if (cachedStatus != null) {
+            LOG.debug("[KeycloakApiClient] Using cached status of the access token.");
+            return CompletableFuture.completedFuture(cachedStatus.getActive());
+        }
 
-        LOG.debug("[KeycloakApiClient] Fetching token from refresh token.");
-        String realm = keycloakConfiguration.keycloakRealm();
+        LOG.debug("[KeycloakApiClient] Fetching status of the access token.");
         String client = keycloakConfiguration.clientId();
         String secret = keycloakConfiguration.clientSecret();
         String basicEncode = Base64.getEncoder().encodeToString((client + ":" + secret).getBytes());
 
-        final String refreshTokenUrl = HttpUrl.parse(keycloakConfiguration.keycloakEndpoint())
-                .newBuilder()
-                .addPathSegments("auth")
-                .addPathSegments("realms")
-                .addPathSegments(realm)
-                .addPathSegments("protocol")
-                .addPathSegments("openid-connect")
-                .addPathSegments("token")
-                .build().toString();
-
-        final FormBody formBody = new FormBody.Builder()
-                .add("grant_type", "refresh_token")
-                .add("refresh_token", refresh_token)
-                .build();
+        return endpointsAsync().thenCompose(endpoints -> {
+            final HttpUrl introspectUrl = endpoints.introspection();
+
+            final FormBody formBody = new FormBody.Builder()
+                    .add("token", token)
+                    .build();
+
+            final Request request = new Request.Builder()
+                    .url(introspectUrl)
+                    .addHeader("Authorization", "Basic " + basicEncode)
+                    .post(formBody)
+                    .build();
+
+            return INTROSPECTIONS.executeAsync(introspectUrl.toString() + '|' + token,
+                    () -> METRICS.time(PluginMetrics.KEYCLOAK_INTROSPECT,
+                            executeAsync(PluginMetrics.KEYCLOAK_INTROSPECT, request, true, response -> KeycloakIntrospectToken.fromJSON(response.body().charStream()))));
+        }).thenApply(status -> {
+            IntrospectionCache.instance().put(realmKey, token, status);
+            return status.getActive();
+        });
+    }
 
-        final Request request = new Request.Builder()
-                .url(refreshTokenUrl)
-                .addHeader("Authorization", "Basic " + basicEncode)
-                .addHeader("Accept", "application/json")
-                .post(formBody)
-                .build();
+    public TokenInfo fetchRefreshToken(String refresh_token) throws Exception {
+        return Futures.await(fetchRefreshTokenAsync(refresh_token));
+    }
 
-        TokenInfo tokenInfo = executeRequest(request, response -> TokenInfo.fromJSON(response.body().string()));
+    public CompletableFuture<TokenInfo> fetchRefreshTokenAsync(String refresh_token) {
+        LOG.debug("[KeycloakApiClient] Fetching token from refresh token.");
+        String client = keycloakConfiguration.clientId();
+        String secret = keycloakConfiguration.clientSecret();
+        String basicEncode = Base64.getEncoder().encodeToString((client + ":" + secret).getBytes());
 
-        return DefaultGoPluginApiResponse.success(tokenInfo.toJSON());
+        return endpointsAsync().thenCompose(endpoints -> {
+            final FormBody formBody = new FormBody.Builder()
+                    .add("grant_type", "refresh_token")
+                    .add("refresh_token", refresh_token)
+                    .build();
+
+            final Request request = new Request.Builder()
+                    .url(endpoints.token())
+                    .addHeader("Authorization", "Basic " + basicEncode)
+                    .addHeader("Accept", "application/json")
+                    .post(formBody)
+                    .build();
+
+            return METRICS.time(PluginMetrics.KEYCLOAK_REFRESH,
+                    executeAsync(PluginMetrics.KEYCLOAK_REFRESH, request, false, response -> TokenInfo.fromJSON(response.body().charStream())));
+        });
     }
 }
@@ -23,46 +23,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
-import static java.text.MessageFormat.format;
-
 public class KeycloakAuthorizer {
-    private final MembershipChecker membershipChecker;
-
-    public KeycloakAuthorizer() {
-        this(new MembershipChecker());
-    }
-
-    public KeycloakAuthorizer(MembershipChecker membershipChecker) {
-        this.membershipChecker = membershipChecker;
-    }
 
     public List<String> authorize(KeycloakUser loggedInUser, AuthConfig authConfig, List<Role> roles) throws IOException {
         final KeycloakUser user = loggedInUser;
-        final List<String> assignedRoles = new ArrayList<>();
 
         if (roles.isEmpty()) {
-            return assignedRoles;
+            return new ArrayList<>();
         }
 
-        LOG.info(format("[Authorize] Authorizing user {0}", user.getEmail()));
-
-        for (Role role : roles) {
-            final List<String> allowedUsers = role.roleConfiguration().users();
-            if (!allowedUsers.isEmpty() && allowedUsers.contains(user.getEmail().toLowerCase())) {
-                LOG.debug(format("[Authorize] Assigning role `{0}` to user `{1}`. As user belongs to allowed users list.", role.name(), user.getEmail()));
-                assignedRoles.add(role.name());
-                continue;
-            }
-
-            if (membershipChecker.isAMemberOfAtLeastOneGroup(loggedInUser, authConfig, role.roleConfiguration().groups())) {
-                LOG.debug(format("[Authorize] Assigning role `{0}` to user `{1}`. As user is a member of at least one group.", role.name(), user.getEmail()));
-                assignedRoles.add(role.name());
-            }
-        }
-
-        LOG.debug(format("[Authorize] User `{0}` is authorized with `{1}` role(s).", user.getEmail(), assignedRoles));
-
-        return assignedRoles;
+        return RoleIndex.of(roles).rolesFor(user.getEmail(), user.groups());
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
+import cd.go.authorization.keycloak.utils.CircuitBreaker;
+import okhttp3.HttpUrl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link CircuitBreaker} per Keycloak host, so an outage of one server fails fast without affecting others.
+ */
+public class KeycloakCircuitBreakers {
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_DURATION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final KeycloakCircuitBreakers CIRCUIT_BREAKERS = new KeycloakCircuitBreakers(FAILURE_THRESHOLD, OPEN_DURATION_MILLIS);
+
+    static {
+        PluginMetrics.instance().gauge("circuit-breakers.open", () -> CIRCUIT_BREAKERS.states().values().stream()
+                .filter(state -> state != CircuitBreaker.State.CLOSED).count());
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    KeycloakCircuitBreakers(int failureThreshold, long openDurationMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    public static KeycloakCircuitBreakers instance() {
+        return CIRCUIT_BREAKERS;
+    }
+
+    public CircuitBreaker breakerFor(HttpUrl url) {
+        return breakers.computeIfAbsent(keyFor(url), key -> new CircuitBreaker(failureThreshold, openDurationMillis));
+    }
+
+    public Map<String, CircuitBreaker.State> states() {
+        final Map<String, CircuitBreaker.State> states = new TreeMap<>();
+        breakers.forEach((key, breaker) -> states.put(key, breaker.state()));
+        return states;
+    }
+
+    static String keyFor(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ':' + url.port();
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+
+/**
+ * Optional cache of discovery documents, signing keys and user profiles that survives server restarts. Entries
+ * live in memory and are appended to a binary record log in the directory named by {@value #DIRECTORY_PROPERTY};
+ * the log is read once at startup and compacted when it grows well past the live entries. Expired entries are
+ * swept as new ones are written, and once the cache holds too many entries the ones closest to expiry are dropped.
+ * Without the property the cache is disabled and stores nothing.
+ */
+public class KeycloakDiskCache {
+    static final String DIRECTORY_PROPERTY = "cd.go.authorization.keycloak.cache.dir";
+    static final String FILE_NAME = "keycloak-cache.bin";
+    private static final int MAGIC = 0x4b434331;
+    private static final int MAX_FIELD_LENGTH = 1 << 20;
+    private static final int COMPACTION_THRESHOLD = 64;
+    private static final int MAX_ENTRIES = 10_000;
+    private static final KeycloakDiskCache DISK_CACHE = forDirectory(System.getProperty(DIRECTORY_PROPERTY));
+
+    static {
+        PluginMetrics.instance().gauge("disk-cache.entries", () -> DISK_CACHE.size());
+    }
+
+    public enum Kind {
+        DISCOVERY(1), JWKS(2), PROFILE(3);
+
+        private final byte id;
+
+        Kind(int id) {
+            this.id = (byte) id;
+        }
+
+        private static Kind of(byte id) {
+            for (Kind kind : values()) {
+                if (kind.id == id) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Path file;
+    private final Executor writer;
+    private final LongSupplier clock;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private int appendedRecords;
+    private int appendsSinceSweep;
+
+    KeycloakDiskCache(Path file, Executor writer, LongSupplier clock) {
+        this(file, writer, clock, MAX_ENTRIES);
+    }
+
+    KeycloakDiskCache(Path file, Executor writer, LongSupplier clock, int maxEntries) {
+        this.file = file;
+        this.writer = writer;
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        if (file != null) {
+            load();
+        }
+    }
+
+    public static KeycloakDiskCache instance() {
+        return DISK_CACHE;
+    }
+
+    public static KeycloakDiskCache disabled() {
+        return new KeycloakDiskCache(null, Runnable::run, System::currentTimeMillis);
+    }
+
+    public boolean enabled() {
+        return file != null;
+    }
+
+    public String get(Kind kind, String key) {
+        final String entryKey = entryKey(kind, key);
+        final Entry entry = entries.get(entryKey);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= clock.getAsLong()) {
+            entries.remove(entryKey, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(Kind kind, String key, String value, long expiresAt) {
+        if (file == null) {
+            return;
+        }
+
+        final long now = clock.getAsLong();
+        final Entry entry = new Entry(kind, key, value, expiresAt);
+        final Entry previous = entries.put(entryKey(kind, key), entry);
+        if (previous != null && previous.value.equals(value) && previous.expiresAt - now > (expiresAt - now) / 2) {
+            return;
+        }
+        if (previous == null && entries.size() > maxEntries) {
+            trim(now);
+        }
+
+        try {
+            writer.execute(() -> append(entry));
+        } catch (RuntimeException e) {
+            LOG.warn("[KeycloakDiskCache] Could not schedule write of {} entry: {}", kind, e.getMessage());
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private synchronized void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long validLength = 0;
+        int records = 0;
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            if (readMagic(in)) {
+                validLength = Integer.BYTES;
+                final long now = clock.getAsLong();
+                Entry entry;
+                while ((entry = readRecord(in, checked.getChecksum())) != null) {
+                    validLength += entry.recordLength;
+                    records++;
+                    if (entry.kind == null) {
+                        continue;
+                    }
+                    if (entry.expiresAt > now) {
+                        entries.put(entryKey(entry.kind, entry.key), entry);
+                    } else {
+                        entries.remove(entryKey(entry.kind, entry.key));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("[KeycloakDiskCache] Could not read {}: {}", file, e.getMessage());
+            entries.clear();
+            return;
+        }
+
+        try {
+            if (validLength == 0) {
+                LOG.warn("[KeycloakDiskCache] Replacing {}, it is not a cache file.", file);
+                Files.delete(file);
+            } else {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    if (channel.size() > validLength) {
+                        LOG.warn("[KeycloakDiskCache] Dropping a partially written record at the end of {}.", file);
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("[KeycloakDiskCache] Could not repair {}: {}", file, e.getMessage());
+        }
+
+        appendedRecords = records;
+        trim(clock.getAsLong());
+        LOG.info("[KeycloakDiskCache] Loaded {} entries from {}.", entries.size(), file);
+    }
+
+    private synchronized void append(Entry entry) {
+        try {
+            if (!Files.exists(file)) {
+                createFile(file);
+                appendedRecords = 0;
+            }
+
+            try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+                out.write(encode(entry));
+            }
+            appendedRecords++;
+
+            if (++appendsSinceSweep >= COMPACTION_THRESHOLD) {
+                appendsSinceSweep = 0;
+                removeExpired(clock.getAsLong());
+            }
+            if (appendedRecords > COMPACTION_THRESHOLD && appendedRecords > 2 * entries.size()) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.warn("[KeycloakDiskCache] Could not write {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void removeExpired(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+
+    private void trim(long now) {
+        synchronized (entries) {
+            removeExpired(now);
+            final int excess = entries.size() - maxEntries * 3 / 4;
+            if (entries.size() <= maxEntries || excess <= 0) {
+                return;
+            }
+
+            final List<Map.Entry<String, Entry>> closestToExpiry = new ArrayList<>(entries.entrySet());
+            closestToExpiry.sort(Comparator.comparingLong(entry -> entry.getValue().expiresAt));
+            for (Map.Entry<String, Entry> entry : closestToExpiry.subList(0, excess)) {
+                entries.remove(entry.getKey(), entry.getValue());
+            }
+            LOG.debug("[KeycloakDiskCache] Dropped {} entries closest to expiry, the cache holds at most {}.", excess, maxEntries);
+        }
+    }
+
+    private void compact() throws IOException {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        createFile(compacted);
+
+        final long now = clock.getAsLong();
+        int records = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(compacted, StandardOpenOption.APPEND))) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().expiresAt <= now) {
+                    entries.remove(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                out.write(encode(entry.getValue()));
+                records++;
+            }
+        }
+
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.debug("[KeycloakDiskCache] Compacted {} records into {}.", appendedRecords, records);
+        appendedRecords = records;
+    }
+
+    private static void createFile(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.deleteIfExists(path);
+        Files.createFile(path);
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+        }
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND))) {
+            out.writeInt(MAGIC);
+        }
+    }
+
+    static byte[] encode(Entry entry) throws IOException {
+        final byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        final byte[] value = entry.value.getBytes(StandardCharsets.UTF_8);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + Long.BYTES + 3 * Integer.BYTES + key.length + value.length);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(entry.kind.id);
+        out.writeLong(entry.expiresAt);
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeInt(value.length);
+        out.write(value);
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static boolean readMagic(DataInputStream in) throws IOException {
+        try {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static Entry readRecord(DataInputStream in, Checksum crc) throws IOException {
+        try {
+            crc.reset();
+            final byte kind = in.readByte();
+            final long expiresAt = in.readLong();
+            final byte[] key = readField(in);
+            final byte[] value = key == null ? null : readField(in);
+            if (value == null) {
+                return null;
+            }
+
+            final int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                return null;
+            }
+
+            final Entry entry = new Entry(Kind.of(kind), new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8), expiresAt);
+            entry.recordLength = 1 + Long.BYTES + 3 * Integer.BYTES + key.length + value.length;
+            return entry;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readField(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            return null;
+        }
+
+        final byte[] field = new byte[length];
+        in.readFully(field);
+        return field;
+    }
+
+    private static String entryKey(Kind kind, String key) {
+        return kind.id + ":" + key;
+    }
+
+    private static KeycloakDiskCache forDirectory(String directory) {
+        if (directory == null || directory.trim().isEmpty()) {
+            return disabled();
+        }
+
+        return new KeycloakDiskCache(Paths.get(directory.trim(), FILE_NAME), Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "keycloak-disk-cache");
+            thread.setDaemon(true);
+            return thread;
+        }), System::currentTimeMillis);
+    }
+
+    static class Entry {
+        private final Kind kind;
+        private final String key;
+        private final String value;
+        private final long expiresAt;
+        private long recordLength;
+
+        Entry(Kind kind, String key, String value, long expiresAt) {
+            this.kind = kind;
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.HttpUrl;
+
+import java.util.List;
+
+/**
+ * Prebuilt OpenID Connect endpoint urls of a Keycloak realm.
+ */
+public class KeycloakEndpoints {
+    private final String issuer;
+    private final HttpUrl authorization;
+    private final HttpUrl token;
+    private final HttpUrl introspection;
+    private final HttpUrl userinfo;
+    private final HttpUrl jwks;
+    private final HttpUrl users;
+
+    KeycloakEndpoints(String issuer, HttpUrl authorization, HttpUrl token, HttpUrl introspection, HttpUrl userinfo, HttpUrl jwks) {
+        this.issuer = issuer;
+        this.authorization = authorization;
+        this.token = token;
+        this.introspection = introspection;
+        this.userinfo = userinfo;
+        this.jwks = jwks;
+        this.users = adminUsersUrl(HttpUrl.parse(issuer));
+    }
+
+    public static KeycloakEndpoints legacy(String keycloakEndpoint, String realm) {
+        return forIssuer(legacyIssuer(keycloakEndpoint, realm));
+    }
+
+    static HttpUrl legacyIssuer(String keycloakEndpoint, String realm) {
+        return realmUrl(keycloakEndpoint, "auth/realms", realm);
+    }
+
+    static HttpUrl realmUrl(String keycloakEndpoint, String realmsPath, String realm) {
+        return HttpUrl.get(keycloakEndpoint)
+                .newBuilder()
+                .addPathSegments(realmsPath)
+                .addPathSegment(realm)
+                .build();
+    }
+
+    static KeycloakEndpoints forIssuer(HttpUrl issuer) {
+        final HttpUrl openIdConnect = issuer.newBuilder().addPathSegments("protocol/openid-connect").build();
+        return new KeycloakEndpoints(
+                issuer.toString(),
+                openIdConnect.newBuilder().addPathSegment("auth").build(),
+                openIdConnect.newBuilder().addPathSegment("token").build(),
+                openIdConnect.newBuilder().addPathSegments("token/introspect").build(),
+                openIdConnect.newBuilder().addPathSegment("userinfo").build(),
+                openIdConnect.newBuilder().addPathSegment("certs").build()
+        );
+    }
+
+    static KeycloakEndpoints fromDiscoveryDocument(String json) {
+        final JsonObject document = JsonParser.parseString(json).getAsJsonObject();
+        final HttpUrl issuer = url(document, "issuer");
+        if (issuer == null) {
+            throw new IllegalArgumentException("Discovery document does not contain an issuer.");
+        }
+
+        final KeycloakEndpoints defaults = forIssuer(issuer);
+        return new KeycloakEndpoints(
+                document.get("issuer").getAsString(),
+                orDefault(url(document, "authorization_endpoint"), defaults.authorization),
+                orDefault(url(document, "token_endpoint"), defaults.token),
+                orDefault(url(document, "introspection_endpoint"), defaults.introspection),
+                orDefault(url(document, "userinfo_endpoint"), defaults.userinfo),
+                orDefault(url(document, "jwks_uri"), defaults.jwks)
+        );
+    }
+
+    public String issuer() {
+        return issuer;
+    }
+
+    public HttpUrl authorization() {
+        return authorization;
+    }
+
+    public HttpUrl token() {
+        return token;
+    }
+
+    public HttpUrl introspection() {
+        return introspection;
+    }
+
+    public HttpUrl userinfo() {
+        return userinfo;
+    }
+
+    public HttpUrl jwks() {
+        return jwks;
+    }
+
+    public HttpUrl users() {
+        return users;
+    }
+
+    static HttpUrl adminUsersUrl(HttpUrl issuer) {
+        if (issuer == null) {
+            return null;
+        }
+
+        final List<String> segments = issuer.pathSegments();
+        final int realms = segments.lastIndexOf("realms");
+        if (realms < 0) {
+            return null;
+        }
+
+        final HttpUrl.Builder builder = issuer.newBuilder().encodedPath("/");
+        for (int i = 0; i < segments.size(); i++) {
+            if (i == realms) {
+                builder.addPathSegment("admin");
+            }
+            builder.addPathSegment(segments.get(i));
+        }
+        return builder.addPathSegment("users").build();
+    }
+
+    private static HttpUrl url(JsonObject document, String name) {
+        final JsonElement element = document.get(name);
+        return element != null && element.isJsonPrimitive() ? HttpUrl.parse(element.getAsString()) : null;
+    }
+
+    private static HttpUrl orDefault(HttpUrl url, HttpUrl defaultUrl) {
+        return url != null ? url : defaultUrl;
+    }
+}
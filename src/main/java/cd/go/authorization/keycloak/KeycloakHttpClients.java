@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
+import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide registry of {@link OkHttpClient}s, one per Keycloak endpoint, realm and client id.
+ * All clients share a single connection pool and dispatcher so keep-alive connections stay warm
+ * across plugin requests.
+ */
+public class KeycloakHttpClients {
+    private static final KeycloakHttpClients HTTP_CLIENTS = new KeycloakHttpClients();
+
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_DURATION_MINUTES = 5;
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 32;
+
+    static {
+        final PluginMetrics metrics = PluginMetrics.instance();
+        metrics.gauge("http.connections", () -> HTTP_CLIENTS.connectionPool().connectionCount());
+        metrics.gauge("http.connections.idle", () -> HTTP_CLIENTS.connectionPool().idleConnectionCount());
+        metrics.gauge("http.calls.running", () -> HTTP_CLIENTS.dispatcher().runningCallsCount());
+        metrics.gauge("http.calls.queued", () -> HTTP_CLIENTS.dispatcher().queuedCallsCount());
+    }
+
+    private final OkHttpClient baseClient;
+    private final ConcurrentMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    KeycloakHttpClients() {
+        this(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(newDispatcher())
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build());
+    }
+
+    KeycloakHttpClients(OkHttpClient baseClient) {
+        this.baseClient = baseClient;
+    }
+
+    public static KeycloakHttpClients instance() {
+        return HTTP_CLIENTS;
+    }
+
+    public OkHttpClient clientFor(KeycloakConfiguration configuration) {
+        return clients.computeIfAbsent(keyFor(configuration), key -> baseClient.newBuilder().build());
+    }
+
+    public ConnectionPool connectionPool() {
+        return baseClient.connectionPool();
+    }
+
+    public Dispatcher dispatcher() {
+        return baseClient.dispatcher();
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    static String keyFor(KeycloakConfiguration configuration) {
+        return configuration.keycloakEndpoint() + '|' + configuration.keycloakRealm() + '|' + configuration.clientId();
+    }
+
+    private static Dispatcher newDispatcher() {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        return dispatcher;
+    }
+}
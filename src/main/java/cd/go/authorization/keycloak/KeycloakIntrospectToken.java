@@ -16,15 +16,26 @@
 
 package cd.go.authorization.keycloak;
 
+import cd.go.authorization.keycloak.utils.JsonStreams;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.math.BigInteger;
 import java.util.List;
 
 import static cd.go.authorization.keycloak.utils.Util.GSON;
 
+@JsonAdapter(KeycloakIntrospectToken.Adapter.class)
 public class KeycloakIntrospectToken {
+    private static final Adapter ADAPTER = new Adapter();
+
     @Expose
     @SerializedName("exp")
     private BigInteger exp;
@@ -59,4 +70,54 @@ public class KeycloakIntrospectToken {
     public static KeycloakIntrospectToken fromJSON(String json) {
         return GSON.fromJson(json, KeycloakIntrospectToken.class);
     }
+
+    public static KeycloakIntrospectToken fromJSON(Reader reader) {
+        return JsonStreams.read(ADAPTER, reader);
+    }
+
+    static class Adapter extends TypeAdapter<KeycloakIntrospectToken> {
+        @Override
+        public void write(JsonWriter out, KeycloakIntrospectToken token) throws IOException {
+            out.beginObject();
+            out.name("exp").value(token.exp);
+            out.name("aud").value(token.aud);
+            out.name("active").value(token.active);
+            out.endObject();
+        }
+
+        @Override
+        public KeycloakIntrospectToken read(JsonReader in) throws IOException {
+            if (!JsonStreams.beginObject(in)) {
+                return null;
+            }
+
+            final KeycloakIntrospectToken token = new KeycloakIntrospectToken();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "exp":
+                        token.exp = JsonStreams.nextBigInteger(in);
+                        break;
+                    case "aud":
+                        token.aud = audience(in);
+                        break;
+                    case "active":
+                        token.active = JsonStreams.nextBoolean(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return token;
+        }
+
+        private static String audience(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                return JsonStreams.nextString(in);
+            }
+
+            final List<String> audiences = JsonStreams.nextStringList(in);
+            return audiences.isEmpty() ? null : audiences.get(0);
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import okhttp3.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * The Keycloak nodes of one configuration. Calls go to the node with the best exponentially weighted latency,
+ * failures count as a slow response, and the p95 latency across nodes decides when read-only calls are hedged.
+ */
+public class KeycloakNodes {
+    static final long DEFAULT_HEDGE_DELAY_MILLIS = 100;
+    static final long MIN_HEDGE_DELAY_MILLIS = 10;
+    static final long MAX_HEDGE_DELAY_MILLIS = 2000;
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final ConcurrentMap<List<String>, KeycloakNodes> NODES = new ConcurrentHashMap<>();
+
+    private final List<Node> nodes;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private volatile long hedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+
+    KeycloakNodes(List<String> endpoints) {
+        final List<Node> nodes = new ArrayList<>(endpoints.size());
+        for (String endpoint : endpoints) {
+            nodes.add(new Node(HttpUrl.get(endpoint)));
+        }
+        this.nodes = Collections.unmodifiableList(nodes);
+    }
+
+    public static KeycloakNodes forEndpoints(List<String> endpoints) {
+        return NODES.computeIfAbsent(endpoints, KeycloakNodes::new);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public Node nodeFor(HttpUrl url) {
+        for (Node node : nodes) {
+            if (node.serves(url)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    public List<Node> select(int count, Predicate<Node> available) {
+        final Node[] candidates = nodes.toArray(new Node[0]);
+        Arrays.sort(candidates, Comparator.comparing((Node node) -> !available.test(node)).thenComparingDouble(Node::score));
+        return Arrays.asList(candidates).subList(0, Math.min(count, candidates.length));
+    }
+
+    public long hedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    public void recordSuccess(Node node, long elapsedNanos) {
+        node.record(elapsedNanos);
+        synchronized (latencies) {
+            latencies[latencyCount++ % LATENCY_SAMPLES] = elapsedNanos;
+            if (latencyCount >= MIN_LATENCY_SAMPLES && latencyCount % 16 == 0) {
+                hedgeDelayMillis = p95Millis();
+            }
+        }
+    }
+
+    public void recordFailure(Node node, long elapsedNanos) {
+        node.record(Math.max(elapsedNanos, FAILURE_PENALTY_NANOS));
+    }
+
+    private long p95Millis() {
+        final long[] samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+        Arrays.sort(samples);
+        final long p95 = TimeUnit.NANOSECONDS.toMillis(samples[(int) Math.ceil(samples.length * 0.95) - 1]);
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, Math.min(MAX_HEDGE_DELAY_MILLIS, p95));
+    }
+
+    public static class Node {
+        private final HttpUrl base;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double ewmaNanos;
+
+        private Node(HttpUrl base) {
+            this.base = base;
+        }
+
+        public HttpUrl base() {
+            return base;
+        }
+
+        public HttpUrl rebase(HttpUrl url) {
+            return url.newBuilder().scheme(base.scheme()).host(base.host()).port(base.port()).build();
+        }
+
+        public void started() {
+            inFlight.incrementAndGet();
+        }
+
+        public void finished() {
+            inFlight.decrementAndGet();
+        }
+
+        boolean serves(HttpUrl url) {
+            return base.scheme().equals(url.scheme()) && base.host().equals(url.host()) && base.port() == url.port();
+        }
+
+        double score() {
+            return ewmaNanos * (1 + inFlight.get());
+        }
+
+        private synchronized void record(long elapsedNanos) {
+            ewmaNanos = ewmaNanos == 0 ? elapsedNanos : EWMA_WEIGHT * elapsedNanos + (1 - EWMA_WEIGHT) * ewmaNanos;
+        }
+
+        @Override
+        public String toString() {
+            return KeycloakCircuitBreakers.keyFor(base);
+        }
+    }
+}
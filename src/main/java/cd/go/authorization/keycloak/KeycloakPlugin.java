@@ -18,13 +18,15 @@ package cd.go.authorization.keycloak;
 
 import cd.go.authorization.keycloak.exceptions.NoSuchRequestHandlerException;
 import cd.go.authorization.keycloak.executors.*;
+import cd.go.authorization.keycloak.metrics.MetricsReporter;
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
 import cd.go.authorization.keycloak.requests.*;
+import cd.go.authorization.keycloak.utils.PluginLogger;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.GoPlugin;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
 import com.thoughtworks.go.plugin.api.annotation.Extension;
 import com.thoughtworks.go.plugin.api.exceptions.UnhandledRequestTypeException;
-import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
@@ -32,36 +34,47 @@ import static cd.go.authorization.keycloak.Constants.PLUGIN_IDENTIFIER;
 
 @Extension
 public class KeycloakPlugin implements GoPlugin {
-    public static final Logger LOG = Logger.getLoggerFor(KeycloakPlugin.class);
+    public static final PluginLogger LOG = PluginLogger.getLoggerFor(KeycloakPlugin.class);
+
+    private static final RequestExecutor PLUGIN_ICON_EXECUTOR = new GetPluginIconRequestExecutor();
+    private static final RequestExecutor CAPABILITIES_EXECUTOR = new GetCapabilitiesRequestExecutor();
+    private static final RequestExecutor AUTH_CONFIG_METADATA_EXECUTOR = new GetAuthConfigMetadataRequestExecutor();
+    private static final RequestExecutor AUTH_CONFIG_VIEW_EXECUTOR = new GetAuthConfigViewRequestExecutor();
+    private static final RequestExecutor ROLE_CONFIG_METADATA_EXECUTOR = new GetRoleConfigMetadataRequestExecutor();
+    private static final RequestExecutor ROLE_CONFIG_VIEW_EXECUTOR = new GetRoleConfigViewRequestExecutor();
 
     private GoApplicationAccessor accessor;
 
     @Override
     public void initializeGoApplicationAccessor(GoApplicationAccessor accessor) {
         this.accessor = accessor;
+        MetricsReporter.instance().start();
     }
 
     @Override
     public GoPluginApiResponse handle(GoPluginApiRequest request) throws UnhandledRequestTypeException {
+        final long startedAt = System.nanoTime();
+        RequestFromServer requestFromServer = null;
         try {
-            switch (RequestFromServer.fromString(request.requestName())) {
+            requestFromServer = RequestFromServer.fromString(request.requestName());
+            switch (requestFromServer) {
                 case REQUEST_GET_PLUGIN_ICON:
-                    return new GetPluginIconRequestExecutor().execute();
+                    return PLUGIN_ICON_EXECUTOR.execute();
                 case REQUEST_GET_CAPABILITIES:
-                    return new GetCapabilitiesRequestExecutor().execute();
+                    return CAPABILITIES_EXECUTOR.execute();
                 case REQUEST_GET_AUTH_CONFIG_METADATA:
-                    return new GetAuthConfigMetadataRequestExecutor().execute();
+                    return AUTH_CONFIG_METADATA_EXECUTOR.execute();
                 case REQUEST_AUTH_CONFIG_VIEW:
-                    return new GetAuthConfigViewRequestExecutor().execute();
+                    return AUTH_CONFIG_VIEW_EXECUTOR.execute();
                 case REQUEST_VALIDATE_AUTH_CONFIG:
                     return AuthConfigValidateRequest.from(request).execute();
                 case REQUEST_VERIFY_CONNECTION:
                     return VerifyConnectionRequest.from(request).execute();
                 case REQUEST_GET_ROLE_CONFIG_METADATA:
-                    return new GetRoleConfigMetadataRequestExecutor().execute();
+                    return ROLE_CONFIG_METADATA_EXECUTOR.execute();
                 case REQUEST_ROLE_CONFIG_VIEW:
-                    return new GetRoleConfigViewRequestExecutor().execute();
-		case REQUEST_VALIDATE_ROLE_CONFIG:
+                    return ROLE_CONFIG_VIEW_EXECUTOR.execute();
+                case REQUEST_VALIDATE_ROLE_CONFIG:
                     return RoleConfigValidateRequest.from(request).execute();
                 case REQUEST_AUTHORIZATION_SERVER_REDIRECT_URL:
                     return GetAuthorizationServerUrlRequest.from(request).execute();
@@ -69,6 +82,8 @@ public class KeycloakPlugin implements GoPlugin {
                     return FetchAccessTokenRequest.from(request).execute();
                 case REQUEST_AUTHENTICATE_USER:
                     return UserAuthenticationRequest.from(request).execute();
+                case REQUEST_SEARCH_USERS:
+                    return SearchUsersRequest.from(request).execute();
                 default:
                     throw new UnhandledRequestTypeException(request.requestName());
             }
@@ -76,8 +91,13 @@ public class KeycloakPlugin implements GoPlugin {
             LOG.warn(e.getMessage());
             return null;
         } catch (Exception e) {
-            LOG.error("Error while executing request " + request.requestName(), e);
+            PluginMetrics.instance().increment(PluginMetrics.REQUEST_PREFIX + requestFromServer.shortName() + PluginMetrics.ERRORS_SUFFIX);
+            LOG.error("Error while executing request {}", request.requestName(), e);
             throw new RuntimeException(e);
+        } finally {
+            if (requestFromServer != null) {
+                PluginMetrics.instance().histogram(PluginMetrics.REQUEST_PREFIX + requestFromServer.shortName()).record(System.nanoTime() - startedAt);
+            }
         }
     }
 
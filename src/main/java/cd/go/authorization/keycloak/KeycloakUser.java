@@ -16,15 +16,25 @@
 
 package cd.go.authorization.keycloak;
 
+import cd.go.authorization.keycloak.utils.JsonStreams;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
 import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
 import static cd.go.authorization.keycloak.utils.Util.GSON;
 
+@JsonAdapter(KeycloakUser.Adapter.class)
 public class KeycloakUser {
+    private static final Adapter ADAPTER = new Adapter();
+
     @Expose
     @SerializedName("email")
     private String email;
@@ -128,4 +138,83 @@ public class KeycloakUser {
     public static KeycloakUser fromJSON(String json) {
         return GSON.fromJson(json, KeycloakUser.class);
     }
+
+    public static KeycloakUser fromJSON(Reader reader) {
+        return JsonStreams.read(ADAPTER, reader);
+    }
+
+    static class Adapter extends TypeAdapter<KeycloakUser> {
+        @Override
+        public void write(JsonWriter out, KeycloakUser user) throws IOException {
+            out.beginObject();
+            out.name("email").value(user.email);
+            out.name("email_verified").value(user.verifiedEmail);
+            out.name("name").value(user.name);
+            out.name("given_name").value(user.givenName);
+            out.name("family_name").value(user.familyName);
+            out.name("locale").value(user.locale);
+            out.name("preferred_username").value(user.preferredUsername);
+            out.name("sub").value(user.sub);
+            out.name("updated_at").value(user.updatedAt);
+            out.name("zoneinfo").value(user.zoneInfo);
+            if (user.groups != null) {
+                out.name("groups").beginArray();
+                for (String group : user.groups) {
+                    out.value(group);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public KeycloakUser read(JsonReader in) throws IOException {
+            if (!JsonStreams.beginObject(in)) {
+                return null;
+            }
+
+            final KeycloakUser user = new KeycloakUser();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "email":
+                        user.email = JsonStreams.nextString(in);
+                        break;
+                    case "email_verified":
+                        user.verifiedEmail = JsonStreams.nextBoolean(in);
+                        break;
+                    case "name":
+                        user.name = JsonStreams.nextString(in);
+                        break;
+                    case "given_name":
+                        user.givenName = JsonStreams.nextString(in);
+                        break;
+                    case "family_name":
+                        user.familyName = JsonStreams.nextString(in);
+                        break;
+                    case "locale":
+                        user.locale = JsonStreams.nextString(in);
+                        break;
+                    case "preferred_username":
+                        user.preferredUsername = JsonStreams.nextString(in);
+                        break;
+                    case "sub":
+                        user.sub = JsonStreams.nextString(in);
+                        break;
+                    case "updated_at":
+                        user.updatedAt = (int) JsonStreams.nextLong(in);
+                        break;
+                    case "zoneinfo":
+                        user.zoneInfo = JsonStreams.nextString(in);
+                        break;
+                    case "groups":
+                        user.groups = JsonStreams.nextStringList(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
 }
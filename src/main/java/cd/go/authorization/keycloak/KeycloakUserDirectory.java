@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import cd.go.authorization.keycloak.models.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+import static cd.go.authorization.keycloak.utils.Util.isBlank;
+
+/**
+ * In-memory copy of a realm's users with a prefix index over username, email and display name.
+ * Searches are answered from memory; the copy is rebuilt page by page in the background once it
+ * is older than the sync interval, and the previous copy keeps answering meanwhile.
+ */
+public class KeycloakUserDirectory {
+    private static final ConcurrentMap<String, KeycloakUserDirectory> DIRECTORIES = new ConcurrentHashMap<>();
+    private static final Executor SYNC_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "keycloak-user-directory-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    static final long SYNC_INTERVAL_MILLIS = 5 * 60 * 1000;
+    static final int PAGE_SIZE = 500;
+    private static final int MAXIMUM_USERS = 100_000;
+
+    public interface PageFetcher {
+        List<KeycloakAdminUser> fetch(int first, int max) throws IOException;
+    }
+
+    private final Executor syncExecutor;
+    private final LongSupplier clock;
+    private final int pageSize;
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private volatile Index index;
+
+    KeycloakUserDirectory(Executor syncExecutor, LongSupplier clock, int pageSize) {
+        this.syncExecutor = syncExecutor;
+        this.clock = clock;
+        this.pageSize = pageSize;
+    }
+
+    public static KeycloakUserDirectory forConfiguration(KeycloakConfiguration configuration) {
+        return DIRECTORIES.computeIfAbsent(KeycloakHttpClients.keyFor(configuration),
+                key -> new KeycloakUserDirectory(SYNC_EXECUTOR, System::currentTimeMillis, PAGE_SIZE));
+    }
+
+    public List<User> search(String searchTerm, int limit, PageFetcher fetcher) throws IOException {
+        if (isBlank(searchTerm)) {
+            return Collections.emptyList();
+        }
+
+        return index(fetcher).search(searchTerm.trim().toLowerCase(Locale.ROOT), limit);
+    }
+
+    int size() {
+        final Index current = index;
+        return current == null ? 0 : current.size;
+    }
+
+    private Index index(PageFetcher fetcher) throws IOException {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = sync(fetcher);
+                }
+            }
+        } else if (clock.getAsLong() - current.syncedAt >= SYNC_INTERVAL_MILLIS && syncing.compareAndSet(false, true)) {
+            syncExecutor.execute(() -> {
+                try {
+                    sync(fetcher);
+                } catch (Exception e) {
+                    LOG.warn("[KeycloakUserDirectory] Could not sync users, keeping the previous copy: {}", e.getMessage());
+                } finally {
+                    syncing.set(false);
+                }
+            });
+        }
+        return current;
+    }
+
+    private Index sync(PageFetcher fetcher) throws IOException {
+        final List<KeycloakAdminUser> users = new ArrayList<>();
+        boolean complete = false;
+        for (int first = 0; first < MAXIMUM_USERS && !complete; first += pageSize) {
+            final List<KeycloakAdminUser> page = fetcher.fetch(first, pageSize);
+            users.addAll(page);
+            complete = page.size() < pageSize;
+        }
+        if (!complete) {
+            LOG.warn("[KeycloakUserDirectory] Stopped syncing users at {}, users beyond that can not be found by search.", users.size());
+        }
+
+        final Index synced = new Index(users, clock.getAsLong());
+        index = synced;
+        LOG.debug("[KeycloakUserDirectory] Synced {} user(s).", synced.size);
+        return synced;
+    }
+
+    private static class Index {
+        private final NavigableMap<String, User[]> usersByTerm;
+        private final int size;
+        private final long syncedAt;
+
+        private Index(List<KeycloakAdminUser> users, long syncedAt) {
+            final Map<String, Set<User>> terms = new HashMap<>();
+            int size = 0;
+            for (KeycloakAdminUser adminUser : users) {
+                final User user = adminUser.isEnabled() ? adminUser.toUser() : null;
+                if (user == null) {
+                    continue;
+                }
+
+                size++;
+                addTerm(terms, adminUser.getUsername(), user);
+                addTerm(terms, user.emailId(), user);
+                addTerm(terms, user.displayName(), user);
+                for (String word : user.displayName().split("\\s+")) {
+                    addTerm(terms, word, user);
+                }
+            }
+
+            final TreeMap<String, User[]> usersByTerm = new TreeMap<>();
+            for (Map.Entry<String, Set<User>> entry : terms.entrySet()) {
+                usersByTerm.put(entry.getKey(), entry.getValue().toArray(new User[0]));
+            }
+            this.usersByTerm = usersByTerm;
+            this.size = size;
+            this.syncedAt = syncedAt;
+        }
+
+        private static void addTerm(Map<String, Set<User>> terms, String term, User user) {
+            if (!isBlank(term)) {
+                terms.computeIfAbsent(term.toLowerCase(Locale.ROOT), key -> new LinkedHashSet<>()).add(user);
+            }
+        }
+
+        private List<User> search(String prefix, int limit) {
+            final Set<User> matches = new LinkedHashSet<>();
+            for (User[] users : usersByTerm.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+                for (User user : users) {
+                    matches.add(user);
+                    if (matches.size() >= limit) {
+                        return new ArrayList<>(matches);
+                    }
+                }
+            }
+            return new ArrayList<>(matches);
+        }
+    }
+}
@@ -1,50 +0,0 @@
-/*
- * Copyright 2017 ThoughtWorks, Inc.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package cd.go.authorization.keycloak;
-
-import cd.go.authorization.keycloak.models.AuthConfig;
-
-import java.io.IOException;
-import java.util.List;
-
-import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
-import static java.text.MessageFormat.format;
-
-public class MembershipChecker {
-
-    public boolean isAMemberOfAtLeastOneGroup(KeycloakUser loggedInUser, AuthConfig authConfig, List<String> groupsAllowed) throws IOException {
-        if (groupsAllowed.isEmpty()) {
-            LOG.info("[MembershipChecker] No groups provided.");
-            return false;
-        }
-
-        return checkMembershipUsingUsersAccessToken(loggedInUser, groupsAllowed);
-    }
-
-    private boolean checkMembershipUsingUsersAccessToken(KeycloakUser loggedInUser, List<String> groupsAllowed) throws IOException {
-        final List<String> myGroups = loggedInUser.groups();
-
-        for (String groupName : myGroups) {
-            if (groupsAllowed.contains(groupName)) {
-                LOG.debug(format("[MembershipChecker] User `{0}` is a member of `{1}` group.", loggedInUser.getEmail(), groupName));
-                return true;
-            }
-        }
-
-        return false;
-    }
-}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.utils.SingleFlight;
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+
+/**
+ * Per realm table of endpoints read from the realm's {@code .well-known/openid-configuration}. The document is
+ * fetched once, refreshed in the background once stale and, when it can not be fetched, the legacy
+ * {@code /auth/realms/...} layout is used until the next attempt. Documents kept in the {@link KeycloakDiskCache}
+ * are served right after a restart while they are revalidated. Callers that must not block, like the login
+ * redirect, wait briefly for a missing or failed discovery before falling back to the legacy layout.
+ */
+public class OidcDiscovery {
+    static final String DISABLED_PROPERTY = "cd.go.authorization.keycloak.discovery.disabled";
+    static final long REFRESH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final long STORED_DOCUMENT_TTL_MILLIS = TimeUnit.DAYS.toMillis(7);
+    static final long CURRENT_ENDPOINTS_WAIT_MILLIS = 2_000;
+    private static final int MAX_DISCOVERY_THREADS = 4;
+    private static final List<String> REALMS_PATHS = Arrays.asList("auth/realms", "realms");
+    private static final OidcDiscovery DISCOVERY = new OidcDiscovery(!Boolean.getBoolean(DISABLED_PROPERTY),
+            newRefreshExecutor(), System::currentTimeMillis, KeycloakDiskCache.instance());
+
+    public interface DocumentFetcher {
+        String fetch(HttpUrl url) throws IOException;
+    }
+
+    private final boolean enabled;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+    private final KeycloakDiskCache diskCache;
+    private final long currentEndpointsWaitMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final SingleFlight<String, Entry> discoveries = new SingleFlight<>();
+
+    OidcDiscovery(boolean enabled, Executor refreshExecutor, LongSupplier clock) {
+        this(enabled, refreshExecutor, clock, KeycloakDiskCache.disabled());
+    }
+
+    OidcDiscovery(boolean enabled, Executor refreshExecutor, LongSupplier clock, KeycloakDiskCache diskCache) {
+        this(enabled, refreshExecutor, clock, diskCache, CURRENT_ENDPOINTS_WAIT_MILLIS);
+    }
+
+    OidcDiscovery(boolean enabled, Executor refreshExecutor, LongSupplier clock, KeycloakDiskCache diskCache, long currentEndpointsWaitMillis) {
+        this.enabled = enabled;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+        this.diskCache = diskCache;
+        this.currentEndpointsWaitMillis = currentEndpointsWaitMillis;
+    }
+
+    public static OidcDiscovery instance() {
+        return DISCOVERY;
+    }
+
+    public KeycloakEndpoints endpointsFor(String keycloakEndpoint, String realm, DocumentFetcher fetcher) throws IOException {
+        final String key = keycloakEndpoint + '|' + realm;
+        final Entry entry = cached(key);
+        if (entry != null) {
+            refreshIfStale(key, entry, keycloakEndpoint, realm, fetcher);
+            return entry.endpoints;
+        }
+
+        return discoveries.execute(key, () -> discover(key, keycloakEndpoint, realm, fetcher)).endpoints;
+    }
+
+    public CompletableFuture<KeycloakEndpoints> endpointsForAsync(String keycloakEndpoint, String realm, DocumentFetcher fetcher) {
+        final String key = keycloakEndpoint + '|' + realm;
+        final Entry entry = cached(key);
+        if (entry != null) {
+            refreshIfStale(key, entry, keycloakEndpoint, realm, fetcher);
+            return CompletableFuture.completedFuture(entry.endpoints);
+        }
+
+        return discoverAsync(key, keycloakEndpoint, realm, fetcher).thenApply(discovered -> discovered.endpoints);
+    }
+
+    public KeycloakEndpoints currentEndpointsFor(String keycloakEndpoint, String realm, DocumentFetcher fetcher) {
+        final String key = keycloakEndpoint + '|' + realm;
+        final Entry entry = cached(key);
+        if (entry != null && entry.discovered) {
+            refreshIfStale(key, entry, keycloakEndpoint, realm, fetcher);
+            return entry.endpoints;
+        }
+
+        final KeycloakEndpoints fallback = entry != null ? entry.endpoints : KeycloakEndpoints.legacy(keycloakEndpoint, realm);
+        try {
+            return discoverAsync(key, keycloakEndpoint, realm, fetcher).get(currentEndpointsWaitMillis, TimeUnit.MILLISECONDS).endpoints;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.debug("[OidcDiscovery] Endpoints of realm {} not discovered yet, using {}.", realm, fallback.issuer());
+            return fallback;
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private Entry cached(String key) {
+        final Entry entry = entries.get(key);
+        if (entry != null || !enabled) {
+            return entry;
+        }
+
+        final String document = diskCache.get(KeycloakDiskCache.Kind.DISCOVERY, key);
+        if (document == null) {
+            return null;
+        }
+
+        try {
+            final Entry stored = new Entry(KeycloakEndpoints.fromDiscoveryDocument(document), 0, true);
+            final Entry existing = entries.putIfAbsent(key, stored);
+            return existing != null ? existing : stored;
+        } catch (RuntimeException e) {
+            LOG.debug("[OidcDiscovery] Ignoring stored discovery document of {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void refreshIfStale(String key, Entry entry, String keycloakEndpoint, String realm, DocumentFetcher fetcher) {
+        if (clock.getAsLong() >= entry.refreshAt) {
+            refresh(key, keycloakEndpoint, realm, fetcher);
+        }
+    }
+
+    private void refresh(String key, String keycloakEndpoint, String realm, DocumentFetcher fetcher) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    discover(key, keycloakEndpoint, realm, fetcher);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            LOG.warn("[OidcDiscovery] Could not schedule discovery for realm {}: {}", realm, e.getMessage());
+        }
+    }
+
+    private CompletableFuture<Entry> discoverAsync(String key, String keycloakEndpoint, String realm, DocumentFetcher fetcher) {
+        final CompletableFuture<Entry> future = new CompletableFuture<>();
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    final Entry current = entries.get(key);
+                    future.complete(current != null && current.discovered ? current : discoveries.execute(key, () -> discover(key, keycloakEndpoint, realm, fetcher)));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private Entry discover(String key, String keycloakEndpoint, String realm, DocumentFetcher fetcher) {
+        Entry entry = null;
+        if (enabled) {
+            for (String realmsPath : REALMS_PATHS) {
+                final HttpUrl documentUrl = KeycloakEndpoints.realmUrl(keycloakEndpoint, realmsPath, realm)
+                        .newBuilder()
+                        .addPathSegments(".well-known/openid-configuration")
+                        .build();
+                try {
+                    final String document = fetcher.fetch(documentUrl);
+                    entry = new Entry(KeycloakEndpoints.fromDiscoveryDocument(document), clock.getAsLong() + REFRESH_INTERVAL_MILLIS, true);
+                    diskCache.put(KeycloakDiskCache.Kind.DISCOVERY, key, document, clock.getAsLong() + STORED_DOCUMENT_TTL_MILLIS);
+                    break;
+                } catch (Exception e) {
+                    LOG.debug("[OidcDiscovery] Discovery document not available at {}: {}", documentUrl, e.getMessage());
+                }
+            }
+        }
+
+        if (entry == null) {
+            final Entry previous = entries.get(key);
+            final KeycloakEndpoints endpoints = previous != null ? previous.endpoints : KeycloakEndpoints.legacy(keycloakEndpoint, realm);
+            final long refreshAt = enabled ? clock.getAsLong() + RETRY_DELAY_MILLIS : Long.MAX_VALUE;
+            if (enabled) {
+                LOG.warn("[OidcDiscovery] Could not discover endpoints of realm {}, using {}.", realm, endpoints.issuer());
+            }
+            entry = new Entry(endpoints, refreshAt, !enabled || previous != null && previous.discovered);
+        }
+
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private static ExecutorService newRefreshExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_DISCOVERY_THREADS, MAX_DISCOVERY_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "keycloak-oidc-discovery-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class Entry {
+        private final KeycloakEndpoints endpoints;
+        private final long refreshAt;
+        private final boolean discovered;
+
+        private Entry(KeycloakEndpoints endpoints, long refreshAt, boolean discovered) {
+            this.endpoints = endpoints;
+            this.refreshAt = refreshAt;
+            this.discovered = discovered;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
+import cd.go.authorization.keycloak.models.Role;
+import cd.go.authorization.keycloak.utils.Interner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index from user email and group name to the roles they grant, compiled once per distinct
+ * role configuration set. Role configurations are compared by value, so successive requests carrying
+ * the same roles reuse the same index. Each index also remembers the roles it assigned per email and
+ * group set, so users sharing the same memberships skip evaluation.
+ */
+public class RoleIndex {
+    private static final int MAXIMUM_INDEXES = 16;
+    private static final Map<List<Role>, RoleIndex> INDEXES = new LinkedHashMap<List<Role>, RoleIndex>(MAXIMUM_INDEXES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Role>, RoleIndex> eldest) {
+            return size() > MAXIMUM_INDEXES;
+        }
+    };
+
+    private static final int MAXIMUM_DECISIONS = 4096;
+
+    private final String[] roleNames;
+    private final Map<String, int[]> rolesByUser;
+    private final Map<String, int[]> rolesByGroup;
+    private final Map<String, List<String>> decisions = new LinkedHashMap<String, List<String>>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > MAXIMUM_DECISIONS;
+        }
+    };
+
+    RoleIndex(List<Role> roles) {
+        final Map<String, List<Integer>> users = new HashMap<>();
+        final Map<String, List<Integer>> groups = new HashMap<>();
+
+        roleNames = new String[roles.size()];
+        for (int i = 0; i < roleNames.length; i++) {
+            final Role role = roles.get(i);
+            roleNames[i] = role.name();
+            if (role.roleConfiguration() == null) {
+                continue;
+            }
+
+            for (String user : role.roleConfiguration().users()) {
+                users.computeIfAbsent(user, key -> new ArrayList<>()).add(i);
+            }
+            for (String group : role.roleConfiguration().groups()) {
+                groups.computeIfAbsent(group, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        rolesByUser = compile(users);
+        rolesByGroup = compile(groups);
+    }
+
+    public static RoleIndex of(List<Role> roles) {
+        synchronized (INDEXES) {
+            final RoleIndex index = INDEXES.get(roles);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        final List<Role> key = Collections.unmodifiableList(new ArrayList<>(roles));
+        final RoleIndex index = new RoleIndex(key);
+        synchronized (INDEXES) {
+            final RoleIndex existing = INDEXES.putIfAbsent(key, index);
+            return existing != null ? existing : index;
+        }
+    }
+
+    public List<String> rolesFor(String email, List<String> groups) {
+        final String key = decisionKey(email, groups);
+        synchronized (decisions) {
+            final List<String> assignedRoles = decisions.get(key);
+            if (assignedRoles != null) {
+                PluginMetrics.instance().cacheLookup(PluginMetrics.ROLE_DECISION_CACHE, true);
+                return assignedRoles;
+            }
+        }
+
+        PluginMetrics.instance().cacheLookup(PluginMetrics.ROLE_DECISION_CACHE, false);
+        final List<String> assignedRoles = Collections.unmodifiableList(evaluate(email, groups));
+        synchronized (decisions) {
+            decisions.put(key, assignedRoles);
+        }
+        return assignedRoles;
+    }
+
+    private List<String> evaluate(String email, List<String> groups) {
+        final BitSet assigned = new BitSet(roleNames.length);
+
+        if (email != null) {
+            mark(assigned, rolesByUser.get(email.toLowerCase()));
+        }
+
+        if (groups != null) {
+            for (String group : groups) {
+                mark(assigned, rolesByGroup.get(group));
+            }
+        }
+
+        final List<String> assignedRoles = new ArrayList<>(assigned.cardinality());
+        for (int i = assigned.nextSetBit(0); i >= 0; i = assigned.nextSetBit(i + 1)) {
+            assignedRoles.add(roleNames[i]);
+        }
+        return assignedRoles;
+    }
+
+    int size() {
+        return roleNames.length;
+    }
+
+    int cachedDecisions() {
+        synchronized (decisions) {
+            return decisions.size();
+        }
+    }
+
+    static String decisionKey(String email, List<String> groups) {
+        final List<String> parts = new ArrayList<>();
+        parts.add(email != null ? email.toLowerCase() : null);
+        if (groups != null && !groups.isEmpty()) {
+            final String[] sortedGroups = groups.toArray(new String[0]);
+            Arrays.sort(sortedGroups, Comparator.nullsFirst(Comparator.naturalOrder()));
+            for (int i = 0; i < sortedGroups.length; i++) {
+                if (sortedGroups[i] != null && (i == 0 || !sortedGroups[i].equals(sortedGroups[i - 1]))) {
+                    parts.add(sortedGroups[i]);
+                }
+            }
+        }
+        return Interner.key(parts.toArray(new String[0]));
+    }
+
+    private static void mark(BitSet assigned, int[] roles) {
+        if (roles == null) {
+            return;
+        }
+
+        for (int role : roles) {
+            assigned.set(role);
+        }
+    }
+
+    private static Map<String, int[]> compile(Map<String, List<Integer>> index) {
+        final Map<String, int[]> compiled = new HashMap<>(index.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+            compiled.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return compiled;
+    }
+}
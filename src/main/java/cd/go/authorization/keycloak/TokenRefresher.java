@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.TokenInfo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+import static cd.go.authorization.keycloak.utils.Util.isBlank;
+import static cd.go.authorization.keycloak.utils.Util.sha256;
+
+/**
+ * Keeps issued tokens fresh by renewing them with their refresh token shortly before they expire. Tokens are
+ * looked up by the access token GoCD was originally given and are dropped once nobody asked for them for a while.
+ */
+public class TokenRefresher {
+    static final long REFRESH_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    static final int MAX_TRACKED_TOKENS = 10_000;
+    private static final TokenRefresher REFRESHER = new TokenRefresher(newScheduler(), System::currentTimeMillis);
+
+    public interface Refresh {
+        TokenInfo refresh(String refreshToken) throws Exception;
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, TrackedToken> trackedTokens = new ConcurrentHashMap<>();
+
+    TokenRefresher(ScheduledExecutorService scheduler, LongSupplier clock) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    public static TokenRefresher instance() {
+        return REFRESHER;
+    }
+
+    public void track(TokenInfo tokenInfo, Refresh refresh) {
+        track(tokenInfo, tokenInfo, refresh);
+    }
+
+    public void track(TokenInfo issued, TokenInfo tokenInfo, Refresh refresh) {
+        if (tokenInfo.expiresIn() <= 0 || isBlank(tokenInfo.refreshToken())) {
+            return;
+        }
+
+        if (trackedTokens.size() >= MAX_TRACKED_TOKENS) {
+            LOG.debug("[TokenRefresher] Too many tokens tracked, not refreshing the new token.");
+            return;
+        }
+
+        final String key = sha256(issued.accessToken());
+        final TrackedToken trackedToken = new TrackedToken(tokenInfo, refresh, clock.getAsLong());
+        trackedTokens.put(key, trackedToken);
+        schedule(key, trackedToken);
+    }
+
+    public TokenInfo current(TokenInfo tokenInfo) {
+        final TrackedToken trackedToken = trackedTokens.get(sha256(tokenInfo.accessToken()));
+        if (trackedToken == null) {
+            return null;
+        }
+
+        final long now = clock.getAsLong();
+        trackedToken.lastAccessedAt = now;
+        final TokenInfo current = trackedToken.current;
+        return now < trackedToken.expiresAt ? current : null;
+    }
+
+    public long expiresAt(TokenInfo tokenInfo) {
+        final TrackedToken trackedToken = trackedTokens.get(sha256(tokenInfo.accessToken()));
+        if (trackedToken != null) {
+            return trackedToken.expiresAt;
+        }
+        return tokenInfo.expiresIn() > 0 ? clock.getAsLong() + TimeUnit.SECONDS.toMillis(tokenInfo.expiresIn()) : Long.MAX_VALUE;
+    }
+
+    int size() {
+        return trackedTokens.size();
+    }
+
+    private void schedule(String key, TrackedToken trackedToken) {
+        final long lifetime = trackedToken.expiresAt - trackedToken.issuedAt;
+        final long refreshAt = trackedToken.expiresAt - Math.min(REFRESH_MARGIN_MILLIS, lifetime / 4);
+        scheduler.schedule(() -> refresh(key, trackedToken), Math.max(0, refreshAt - clock.getAsLong()), TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(String key, TrackedToken trackedToken) {
+        if (trackedTokens.get(key) != trackedToken) {
+            return;
+        }
+
+        final long now = clock.getAsLong();
+        if (now - trackedToken.lastAccessedAt > IDLE_TIMEOUT_MILLIS) {
+            trackedTokens.remove(key, trackedToken);
+            return;
+        }
+
+        try {
+            final TokenInfo refreshed = trackedToken.refresh.refresh(trackedToken.current.refreshToken());
+            if (refreshed.expiresIn() <= 0) {
+                trackedTokens.remove(key, trackedToken);
+                return;
+            }
+
+            trackedToken.update(refreshed, now);
+            schedule(key, trackedToken);
+        } catch (Exception e) {
+            trackedTokens.remove(key, trackedToken);
+            LOG.warn("[TokenRefresher] Could not refresh token, it will be refreshed on next use: {}", e.getMessage());
+        }
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newScheduledThreadPool(2, runnable -> {
+            final Thread thread = new Thread(runnable, "keycloak-token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class TrackedToken {
+        private final Refresh refresh;
+        private volatile TokenInfo current;
+        private volatile long issuedAt;
+        private volatile long expiresAt;
+        private volatile long lastAccessedAt;
+
+        private TrackedToken(TokenInfo tokenInfo, Refresh refresh, long now) {
+            this.refresh = refresh;
+            this.lastAccessedAt = now;
+            update(tokenInfo, now);
+        }
+
+        private void update(TokenInfo tokenInfo, long now) {
+            if (isBlank(tokenInfo.refreshToken()) && current != null) {
+                tokenInfo = new TokenInfo(tokenInfo.accessToken(), tokenInfo.expiresIn(), tokenInfo.tokenType(), current.refreshToken(), tokenInfo.idToken());
+            }
+
+            this.issuedAt = now;
+            this.expiresAt = now + TimeUnit.SECONDS.toMillis(tokenInfo.expiresIn());
+            this.current = tokenInfo;
+        }
+    }
+}
@@ -21,8 +21,20 @@ import java.lang.reflect.Field;
 import java.util.*;
 
 public class MetadataHelper {
+    // getMetadata() keeps the raw List<ProfileMetadata> its callers already use.
+    @SuppressWarnings("rawtypes")
+    private static final ClassValue<List<ProfileMetadata>> METADATA = new ClassValue<List<ProfileMetadata>>() {
+        @Override
+        protected List<ProfileMetadata> computeValue(Class<?> clazz) {
+            return Collections.unmodifiableList(buildMetadata(clazz));
+        }
+    };
 
     public static List<ProfileMetadata> getMetadata(Class<?> clazz) {
+        return METADATA.get(clazz);
+    }
+
+    private static List<ProfileMetadata> buildMetadata(Class<?> clazz) {
         Field[] fields = clazz.getDeclaredFields();
         List<ProfileMetadata> metadata = new ArrayList<>();
         for (Field field : fields) {
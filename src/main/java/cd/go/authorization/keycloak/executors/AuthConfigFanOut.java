@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.executors;
+
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
+import cd.go.authorization.keycloak.models.AuthConfig;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Runs calls against auth configs. A call against a single auth config runs on the calling thread; calls against
+ * several run concurrently on a bounded pool, each with its own timeout, so one slow or unreachable realm does not
+ * hold up users of the others. A call the pool can not queue runs on the calling thread.
+ */
+public class AuthConfigFanOut {
+    private static final int MAX_THREADS = 8;
+    private static final int MAX_QUEUED_CALLS = 256;
+    private static final long TIMEOUT_MILLIS = 15_000;
+    private static final AuthConfigFanOut FAN_OUT = new AuthConfigFanOut(newExecutor(), TIMEOUT_MILLIS);
+
+    public interface Call<T> {
+        T call(AuthConfig authConfig) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    AuthConfigFanOut(ExecutorService executor, long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static AuthConfigFanOut instance() {
+        return FAN_OUT;
+    }
+
+    public <T> T call(AuthConfig authConfig, Call<T> call) throws Exception {
+        return call.call(authConfig);
+    }
+
+    public <T> Map<AuthConfig, T> successful(List<AuthConfig> authConfigs, Call<T> call) throws InterruptedException {
+        if (authConfigs.size() == 1) {
+            return successful(authConfigs.get(0), call);
+        }
+
+        final long submittedAt = System.nanoTime();
+        final Map<AuthConfig, Future<T>> futures = new LinkedHashMap<>();
+        for (AuthConfig authConfig : authConfigs) {
+            futures.put(authConfig, submit(authConfig, call));
+        }
+
+        final Map<AuthConfig, T> results = new LinkedHashMap<>();
+        for (Map.Entry<AuthConfig, Future<T>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), await(entry.getKey(), entry.getValue(), submittedAt));
+            } catch (InterruptedException e) {
+                futures.values().forEach(future -> future.cancel(true));
+                throw e;
+            } catch (Exception e) {
+                LOG.warn("[AuthConfigFanOut] Skipping auth config {}: {}", entry.getKey().getId(), e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    private <T> Map<AuthConfig, T> successful(AuthConfig authConfig, Call<T> call) throws InterruptedException {
+        final Map<AuthConfig, T> results = new LinkedHashMap<>();
+        try {
+            results.put(authConfig, call.call(authConfig));
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.warn("[AuthConfigFanOut] Skipping auth config {}: {}", authConfig.getId(), e.getMessage());
+        }
+        return results;
+    }
+
+    private <T> Future<T> submit(AuthConfig authConfig, Call<T> call) {
+        try {
+            return executor.submit(() -> call.call(authConfig));
+        } catch (RejectedExecutionException e) {
+            LOG.debug("[AuthConfigFanOut] Too many calls queued, calling auth config {} on the calling thread.", authConfig.getId());
+            final FutureTask<T> task = new FutureTask<>(() -> call.call(authConfig));
+            task.run();
+            return task;
+        }
+    }
+
+    private <T> T await(AuthConfig authConfig, Future<T> future, long submittedAt) throws Exception {
+        try {
+            return future.get(submittedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TimeoutException(format("Timed out waiting for auth config {0}.", authConfig.getId()));
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_CALLS), daemonThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        PluginMetrics.instance().gauge("auth-config-pool.active", executor::getActiveCount);
+        PluginMetrics.instance().gauge("auth-config-pool.queued", () -> executor.getQueue().size());
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "keycloak-auth-config-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
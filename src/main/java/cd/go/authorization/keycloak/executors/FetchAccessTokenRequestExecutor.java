@@ -16,18 +16,36 @@
 
 package cd.go.authorization.keycloak.executors;
 
+import cd.go.authorization.keycloak.AuthorizationStates;
+import cd.go.authorization.keycloak.exceptions.InvalidStateException;
 import cd.go.authorization.keycloak.exceptions.NoAuthorizationConfigurationException;
-import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import cd.go.authorization.keycloak.models.AuthConfig;
 import cd.go.authorization.keycloak.models.TokenInfo;
 import cd.go.authorization.keycloak.requests.FetchAccessTokenRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.util.Map;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+import static java.text.MessageFormat.format;
+
 public class FetchAccessTokenRequestExecutor implements RequestExecutor {
+    private static final boolean LENIENT_STATE = Boolean.getBoolean("cd.go.authorization.keycloak.state.lenient");
     private final FetchAccessTokenRequest request;
+    private final AuthConfigFanOut fanOut;
+    private final AuthorizationStates states;
+    private final boolean strictState;
 
     public FetchAccessTokenRequestExecutor(FetchAccessTokenRequest request) {
+        this(request, AuthConfigFanOut.instance(), AuthorizationStates.instance(), !LENIENT_STATE);
+    }
+
+    FetchAccessTokenRequestExecutor(FetchAccessTokenRequest request, AuthConfigFanOut fanOut, AuthorizationStates states, boolean strictState) {
         this.request = request;
+        this.fanOut = fanOut;
+        this.states = states;
+        this.strictState = strictState;
     }
 
     public GoPluginApiResponse execute() throws Exception {
@@ -35,9 +53,35 @@ public class FetchAccessTokenRequestExecutor implements RequestExecutor {
             throw new NoAuthorizationConfigurationException("[Get Access Token] No authorization configuration found.");
         }
 
-        final KeycloakConfiguration configuration = request.authConfigs().get(0).getConfiguration();
-        final TokenInfo tokenInfo = configuration.keycloakApiClient().fetchAccessToken(request.requestParameters());
+        final AuthConfig authConfig = owningAuthConfig(validateState(request.requestParameters()));
+        final TokenInfo tokenInfo = fanOut.call(authConfig, owner -> owner.getConfiguration().keycloakApiClient().fetchAccessToken(request.requestParameters()));
 
         return DefaultGoPluginApiResponse.success(tokenInfo.toJSON());
     }
+
+    private AuthorizationStates.Issued validateState(Map<String, String> params) {
+        final AuthorizationStates.Issued issued = params == null ? null : states.consume(params.get("state"));
+        if (issued != null) {
+            return issued;
+        }
+
+        if (strictState) {
+            throw new InvalidStateException("[Get Access Token] Unknown or expired state in authorization callback.");
+        }
+        LOG.warn("[Get Access Token] Unknown or expired state in authorization callback, continuing.");
+        return null;
+    }
+
+    private AuthConfig owningAuthConfig(AuthorizationStates.Issued issued) {
+        if (issued == null || issued.authConfigId() == null) {
+            return request.authConfigs().get(0);
+        }
+
+        for (AuthConfig authConfig : request.authConfigs()) {
+            if (issued.authConfigId().equals(authConfig.getId())) {
+                return authConfig;
+            }
+        }
+        throw new InvalidStateException(format("[Get Access Token] Auth config `{0}` of the authorization callback is no longer configured.", issued.authConfigId()));
+    }
 }
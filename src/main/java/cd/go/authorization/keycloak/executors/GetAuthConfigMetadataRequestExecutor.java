@@ -28,9 +28,14 @@ import java.util.List;
 
 public class GetAuthConfigMetadataRequestExecutor implements RequestExecutor {
     private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private static final String RESPONSE_BODY = render();
 
     public GoPluginApiResponse execute() throws Exception {
+        return DefaultGoPluginApiResponse.success(RESPONSE_BODY);
+    }
+
+    private static String render() {
         final List<ProfileMetadata> authConfigMetadata = MetadataHelper.getMetadata(KeycloakConfiguration.class);
-        return DefaultGoPluginApiResponse.success( GSON.toJson(authConfigMetadata));
+        return GSON.toJson(authConfigMetadata);
     }
 }
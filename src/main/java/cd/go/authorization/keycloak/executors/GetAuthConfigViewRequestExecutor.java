@@ -24,11 +24,16 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
 public class GetAuthConfigViewRequestExecutor implements RequestExecutor {
     private static final Gson GSON = new Gson();
+    private static final String RESPONSE_BODY = render();
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
+        return DefaultGoPluginApiResponse.success(RESPONSE_BODY);
+    }
+
+    private static String render() {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("template", Util.readResource("/auth-config.template.html"));
-        return DefaultGoPluginApiResponse.success(GSON.toJson(jsonObject));
+        return GSON.toJson(jsonObject);
     }
 }
@@ -18,6 +18,7 @@ package cd.go.authorization.keycloak.executors;
 
 import cd.go.authorization.keycloak.KeycloakApiClient;
 import cd.go.authorization.keycloak.exceptions.NoAuthorizationConfigurationException;
+import cd.go.authorization.keycloak.models.AuthConfig;
 import cd.go.authorization.keycloak.requests.GetAuthorizationServerUrlRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
@@ -38,8 +39,10 @@ public class GetAuthorizationServerUrlRequestExecutor implements RequestExecutor
             throw new NoAuthorizationConfigurationException("[Authorization Server Url] No authorization configuration found.");
         }
 
-        final KeycloakApiClient keycloakApiClient = request.authConfigs().get(0).getConfiguration().keycloakApiClient();
+        final AuthConfig authConfig = request.authConfigs().get(0);
+        final KeycloakApiClient keycloakApiClient = authConfig.getConfiguration().keycloakApiClient();
 
-        return DefaultGoPluginApiResponse.success(GSON.toJson(Collections.singletonMap("authorization_server_url", keycloakApiClient.authorizationServerUrl(request.callbackUrl()))));
+        return DefaultGoPluginApiResponse.success(GSON.toJson(Collections.singletonMap("authorization_server_url",
+                keycloakApiClient.authorizationServerUrl(request.callbackUrl(), authConfig.getId()))));
     }
 }
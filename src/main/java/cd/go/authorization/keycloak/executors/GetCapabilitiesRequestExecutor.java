@@ -23,14 +23,15 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
 import static com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse.SUCCESS_RESPONSE_CODE;
 
-public class GetCapabilitiesRequestExecutor {
+public class GetCapabilitiesRequestExecutor implements RequestExecutor {
+    private static final String RESPONSE_BODY = getCapabilities().toJSON();
 
+    @Override
     public GoPluginApiResponse execute() {
-        Capabilities capabilities = getCapabilities();
-        return new DefaultGoPluginApiResponse(SUCCESS_RESPONSE_CODE, capabilities.toJSON());
+        return new DefaultGoPluginApiResponse(SUCCESS_RESPONSE_CODE, RESPONSE_BODY);
     }
 
-    Capabilities getCapabilities() {
+    static Capabilities getCapabilities() {
         return new Capabilities(SupportedAuthType.Web, true, true);
     }
 }
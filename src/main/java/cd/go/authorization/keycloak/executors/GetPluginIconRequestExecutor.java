@@ -27,21 +27,25 @@ import static java.util.Base64.getEncoder;
 
 public class GetPluginIconRequestExecutor implements RequestExecutor {
     private static final Gson GSON = new Gson();
+    private static final String RESPONSE_BODY = render();
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
+        return DefaultGoPluginApiResponse.success(RESPONSE_BODY);
+    }
+
+    private static String render() {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("content_type", getContentType());
         jsonObject.addProperty("data", getEncoder().encodeToString(readResourceBytes(getIcon())));
-        return DefaultGoPluginApiResponse.success( GSON.toJson(jsonObject));
-
+        return GSON.toJson(jsonObject);
     }
 
-    private String getContentType() {
+    private static String getContentType() {
         return "image/png";
     }
 
-    private String getIcon() {
+    private static String getIcon() {
         return "/keycloak.png";
     }
 }
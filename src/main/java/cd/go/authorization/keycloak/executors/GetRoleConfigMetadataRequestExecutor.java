@@ -28,9 +28,14 @@ import java.util.List;
 
 public class GetRoleConfigMetadataRequestExecutor implements RequestExecutor {
     private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private static final String RESPONSE_BODY = render();
 
     public GoPluginApiResponse execute() throws Exception {
-        final List<ProfileMetadata> authConfigMetadata = MetadataHelper.getMetadata(KeycloakRoleConfiguration.class);
-        return DefaultGoPluginApiResponse.success(GSON.toJson(authConfigMetadata));
+        return DefaultGoPluginApiResponse.success(RESPONSE_BODY);
+    }
+
+    private static String render() {
+        final List<ProfileMetadata> roleConfigMetadata = MetadataHelper.getMetadata(KeycloakRoleConfiguration.class);
+        return GSON.toJson(roleConfigMetadata);
     }
 }
@@ -24,11 +24,16 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import static cd.go.authorization.keycloak.utils.Util.GSON;
 
 public class GetRoleConfigViewRequestExecutor implements RequestExecutor {
+    private static final String RESPONSE_BODY = render();
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
+        return DefaultGoPluginApiResponse.success(RESPONSE_BODY);
+    }
+
+    private static String render() {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("template", Util.readResource("/role-config.template.html"));
-        return DefaultGoPluginApiResponse.success(GSON.toJson(jsonObject));
+        return GSON.toJson(jsonObject);
     }
 }
@@ -18,6 +18,10 @@ package cd.go.authorization.keycloak.executors;
 
 import cd.go.authorization.keycloak.exceptions.NoSuchRequestHandlerException;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 public enum RequestFromServer {
 
     REQUEST_GET_PLUGIN_ICON(Constants.REQUEST_PREFIX + ".get-icon"),
@@ -38,6 +42,14 @@ public enum RequestFromServer {
     REQUEST_AUTHORIZATION_SERVER_REDIRECT_URL(Constants.REQUEST_PREFIX + ".authorization-server-url"),
     REQUEST_ACCESS_TOKEN(Constants.REQUEST_PREFIX + ".fetch-access-token");
 
+    private static final Map<String, RequestFromServer> REQUESTS_BY_NAME = new HashMap<>();
+
+    static {
+        for (RequestFromServer requestFromServer : values()) {
+            REQUESTS_BY_NAME.put(requestFromServer.requestName.toLowerCase(Locale.ROOT), requestFromServer);
+        }
+    }
+
     private final String requestName;
 
     RequestFromServer(String requestName) {
@@ -46,10 +58,13 @@ public enum RequestFromServer {
 
     public static RequestFromServer fromString(String requestName) {
         if (requestName != null) {
-            for (RequestFromServer requestFromServer : RequestFromServer.values()) {
-                if (requestName.equalsIgnoreCase(requestFromServer.requestName)) {
-                    return requestFromServer;
-                }
+            RequestFromServer requestFromServer = REQUESTS_BY_NAME.get(requestName);
+            if (requestFromServer == null) {
+                requestFromServer = REQUESTS_BY_NAME.get(requestName.toLowerCase(Locale.ROOT));
+            }
+
+            if (requestFromServer != null) {
+                return requestFromServer;
             }
         }
 
@@ -60,6 +75,10 @@ public enum RequestFromServer {
         return requestName;
     }
 
+    public String shortName() {
+        return requestName.substring(Constants.REQUEST_PREFIX.length() + 1);
+    }
+
     private interface Constants {
         String REQUEST_PREFIX = "go.cd.authorization";
         String _AUTH_CONFIG_METADATA = "auth-config";
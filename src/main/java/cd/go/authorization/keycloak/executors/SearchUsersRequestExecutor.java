@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.executors;
+
+import cd.go.authorization.keycloak.KeycloakUserDirectory;
+import cd.go.authorization.keycloak.models.AuthConfig;
+import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import cd.go.authorization.keycloak.models.User;
+import cd.go.authorization.keycloak.requests.SearchUsersRequest;
+import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+import static cd.go.authorization.keycloak.utils.Util.GSON;
+
+public class SearchUsersRequestExecutor implements RequestExecutor {
+    static final int MAXIMUM_RESULTS = 100;
+    private final SearchUsersRequest request;
+
+    public SearchUsersRequestExecutor(SearchUsersRequest request) {
+        this.request = request;
+    }
+
+    @Override
+    public GoPluginApiResponse execute() throws Exception {
+        final Set<User> users = new LinkedHashSet<>();
+        if (request.authConfigs() != null) {
+            for (AuthConfig authConfig : request.authConfigs()) {
+                if (users.size() >= MAXIMUM_RESULTS) {
+                    break;
+                }
+
+                try {
+                    final KeycloakConfiguration configuration = authConfig.getConfiguration();
+                    users.addAll(directoryFor(configuration).search(request.searchTerm(), MAXIMUM_RESULTS - users.size(),
+                            configuration.keycloakApiClient().userPages()));
+                } catch (Exception e) {
+                    LOG.error("[Search Users] Failed to search users using auth config `{}`.", authConfig.getId(), e);
+                }
+            }
+        }
+
+        return DefaultGoPluginApiResponse.success(GSON.toJson(new ArrayList<>(users)));
+    }
+
+    KeycloakUserDirectory directoryFor(KeycloakConfiguration configuration) {
+        return KeycloakUserDirectory.forConfiguration(configuration);
+    }
+}
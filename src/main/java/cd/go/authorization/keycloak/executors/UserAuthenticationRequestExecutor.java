@@ -19,32 +19,53 @@ package cd.go.authorization.keycloak.executors;
 import cd.go.authorization.keycloak.KeycloakApiClient;
 import cd.go.authorization.keycloak.KeycloakAuthorizer;
 import cd.go.authorization.keycloak.KeycloakUser;
+import cd.go.authorization.keycloak.exceptions.InvalidTokenException;
 import cd.go.authorization.keycloak.exceptions.NoAuthorizationConfigurationException;
+import cd.go.authorization.keycloak.jwt.Jwt;
 import cd.go.authorization.keycloak.models.AuthConfig;
 import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import cd.go.authorization.keycloak.models.Role;
+import cd.go.authorization.keycloak.models.TokenInfo;
 import cd.go.authorization.keycloak.models.User;
 import cd.go.authorization.keycloak.requests.UserAuthenticationRequest;
+import cd.go.authorization.keycloak.utils.PluginLogger;
 import com.google.gson.Gson;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+import static cd.go.authorization.keycloak.utils.Util.isNotBlank;
+import static java.text.MessageFormat.format;
 
 public class UserAuthenticationRequestExecutor implements RequestExecutor {
     private static final Gson GSON = new Gson();
     private final UserAuthenticationRequest request;
     private final KeycloakAuthorizer keycloakAuthorizer;
+    private final AuthConfigFanOut fanOut;
 
     public UserAuthenticationRequestExecutor(UserAuthenticationRequest request) {
         this(request, new KeycloakAuthorizer());
     }
 
     UserAuthenticationRequestExecutor(UserAuthenticationRequest request, KeycloakAuthorizer keycloakAuthorizer) {
+        this(request, keycloakAuthorizer, AuthConfigFanOut.instance());
+    }
+
+    UserAuthenticationRequestExecutor(UserAuthenticationRequest request, KeycloakAuthorizer keycloakAuthorizer, AuthConfigFanOut fanOut) {
         this.request = request;
         this.keycloakAuthorizer = keycloakAuthorizer;
+        this.fanOut = fanOut;
     }
 
     @Override
@@ -53,15 +74,100 @@ public class UserAuthenticationRequestExecutor implements RequestExecutor {
             throw new NoAuthorizationConfigurationException("[Authenticate] No authorization configuration found.");
         }
 
-        final AuthConfig authConfig = request.authConfigs().get(0);
-        final KeycloakConfiguration configuration = request.authConfigs().get(0).getConfiguration();
-        final KeycloakApiClient keycloakApiClient = configuration.keycloakApiClient();
-        final KeycloakUser keycloakUser = keycloakApiClient.userProfile(request.tokenInfo());
+        final long startedAt = System.nanoTime();
+        final List<AuthConfig> realmAuthConfigs = authConfigsOfTokenIssuer();
+        final AuthConfig authConfig = realmAuthConfigs.get(0);
+        final KeycloakUser keycloakUser = fanOut.call(authConfig, owner -> userProfile(owner.getConfiguration(), request.tokenInfo()));
+        final User user = new User(keycloakUser);
+        final List<String> roles = roles(keycloakUser, realmAuthConfigs);
+        LOG.info("[Authenticate] user={} auth_config={} roles={} token={} elapsed_ms={}", user.emailId(),
+                authConfig.getId(), roles.size(), PluginLogger.fingerprint(accessToken()),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
 
         Map<String, Object> userMap = new HashMap<>();
-        userMap.put("user", new User(keycloakUser));
-        userMap.put("roles", keycloakAuthorizer.authorize(keycloakUser, authConfig, request.roles()));
-
+        userMap.put("user", user);
+        userMap.put("roles", roles);
         return DefaultGoPluginApiResponse.success(GSON.toJson(userMap));
     }
+
+    private List<AuthConfig> authConfigsOfTokenIssuer() throws Exception {
+        final List<AuthConfig> authConfigs = request.authConfigs();
+        final Jwt token = parse(accessToken());
+        if (authConfigs.size() == 1 || token == null || token.issuer() == null) {
+            return Collections.singletonList(authConfigs.get(0));
+        }
+
+        final Map<AuthConfig, String> issuers = fanOut.successful(authConfigs, authConfig -> authConfig.getConfiguration().keycloakApiClient().issuer());
+        final List<AuthConfig> matching = new ArrayList<>();
+        for (Map.Entry<AuthConfig, String> issuer : issuers.entrySet()) {
+            if (sameIssuer(token.issuer(), issuer.getValue())) {
+                matching.add(issuer.getKey());
+            }
+        }
+
+        if (matching.isEmpty()) {
+            throw new InvalidTokenException(format("[Authenticate] Token issuer `{0}` does not match any auth config.", token.issuer()));
+        }
+        matching.sort(Comparator.comparing(authConfig -> token.authorizedParty() == null
+                || !token.authorizedParty().equals(authConfig.getConfiguration().clientId())));
+        return matching;
+    }
+
+    private List<String> roles(KeycloakUser keycloakUser, List<AuthConfig> realmAuthConfigs) throws Exception {
+        if (realmAuthConfigs.size() == 1) {
+            return keycloakAuthorizer.authorize(keycloakUser, realmAuthConfigs.get(0), rolesFor(realmAuthConfigs.get(0)));
+        }
+
+        final Set<String> roles = new LinkedHashSet<>();
+        fanOut.successful(realmAuthConfigs, authConfig -> keycloakAuthorizer.authorize(keycloakUser, authConfig, rolesFor(authConfig)))
+                .values().forEach(roles::addAll);
+        return new ArrayList<>(roles);
+    }
+
+    private static Jwt parse(String accessToken) {
+        try {
+            return Jwt.parse(accessToken);
+        } catch (InvalidTokenException e) {
+            return null;
+        }
+    }
+
+    private static boolean sameIssuer(String tokenIssuer, String issuer) {
+        return issuer != null && trimTrailingSlash(tokenIssuer).equals(trimTrailingSlash(issuer));
+    }
+
+    private static String trimTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private String accessToken() {
+        return request.tokenInfo() == null ? null : request.tokenInfo().accessToken();
+    }
+
+    private List<Role> rolesFor(AuthConfig authConfig) {
+        if (request.roles() == null || request.authConfigs().size() == 1) {
+            return request.roles();
+        }
+
+        final List<Role> roles = new ArrayList<>();
+        for (Role role : request.roles()) {
+            if (role.authConfigId() == null || role.authConfigId().equals(authConfig.getId())) {
+                roles.add(role);
+            }
+        }
+        return roles;
+    }
+
+    private KeycloakUser userProfile(KeycloakConfiguration configuration, TokenInfo tokenInfo) throws Exception {
+        final KeycloakApiClient keycloakApiClient = configuration.keycloakApiClient();
+        if (configuration.useIdTokenClaims() && tokenInfo != null && isNotBlank(tokenInfo.idToken())) {
+            try {
+                return keycloakApiClient.userProfileFromIdToken(tokenInfo);
+            } catch (InvalidTokenException | IOException e) {
+                LOG.debug("[Authenticate] Id token can not be used, fetching user profile instead: {}", e.getMessage());
+            }
+        }
+
+        return keycloakApiClient.userProfile(tokenInfo);
+    }
 }
@@ -32,7 +32,7 @@ public class VerifyConnectionRequestExecutor implements RequestExecutor {
     private final KeycloakApiClient providerManager;
 
     public VerifyConnectionRequestExecutor(VerifyConnectionRequest request) {
-        this(request, new KeycloakApiClient(request.keycloakConfiguration()));
+        this(request, request.keycloakConfiguration().keycloakApiClient());
     }
 
     public VerifyConnectionRequestExecutor(VerifyConnectionRequest request, KeycloakApiClient providerManager) {
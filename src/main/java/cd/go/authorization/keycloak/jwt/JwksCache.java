@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.jwt;
+
+import cd.go.authorization.keycloak.KeycloakDiskCache;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+
+/**
+ * Signing keys published by a realm's JWKS endpoint. Keys are fetched once and refetched only when a
+ * token references an unknown key id, which is how Keycloak key rotation shows up. Keys kept in the
+ * {@link KeycloakDiskCache} are used right after a restart and refetched in the background on first use.
+ */
+public class JwksCache {
+    private static final ConcurrentMap<String, JwksCache> CACHES = new ConcurrentHashMap<>();
+    private static final long MIN_REFETCH_INTERVAL_MILLIS = 10_000;
+    private static final long STORED_KEYS_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final Executor REVALIDATION_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "keycloak-jwks-revalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface KeySetFetcher {
+        String fetch() throws IOException;
+    }
+
+    private final String url;
+    private final KeycloakDiskCache diskCache;
+    private final Executor revalidationExecutor;
+    private final LongSupplier clock;
+    private final AtomicBoolean revalidate = new AtomicBoolean();
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private volatile boolean fetched;
+    private volatile long lastFetchedAt;
+
+    JwksCache(LongSupplier clock) {
+        this(null, KeycloakDiskCache.disabled(), Runnable::run, clock);
+    }
+
+    JwksCache(String url, KeycloakDiskCache diskCache, Executor revalidationExecutor, LongSupplier clock) {
+        this.url = url;
+        this.diskCache = diskCache;
+        this.revalidationExecutor = revalidationExecutor;
+        this.clock = clock;
+        loadStoredKeys();
+    }
+
+    public static JwksCache forUrl(String jwksUrl) {
+        return CACHES.computeIfAbsent(jwksUrl, url -> new JwksCache(url, KeycloakDiskCache.instance(), REVALIDATION_EXECUTOR, System::currentTimeMillis));
+    }
+
+    public PublicKey key(String keyId, KeySetFetcher fetcher) throws IOException {
+        PublicKey key = lookup(keyId);
+        if (key != null) {
+            if (revalidate.compareAndSet(true, false)) {
+                revalidate(fetcher);
+            }
+            return key;
+        }
+
+        synchronized (this) {
+            key = lookup(keyId);
+            if (key != null || fetchedRecently()) {
+                return key;
+            }
+
+            LOG.debug("[JwksCache] Fetching signing keys, unknown key id `{}`.", keyId);
+            fetch(fetcher);
+            return lookup(keyId);
+        }
+    }
+
+    private void fetch(KeySetFetcher fetcher) throws IOException {
+        final String json = fetcher.fetch();
+        keys = parse(json);
+        fetched = true;
+        revalidate.set(false);
+        lastFetchedAt = clock.getAsLong();
+        if (url != null) {
+            diskCache.put(KeycloakDiskCache.Kind.JWKS, url, json, lastFetchedAt + STORED_KEYS_TTL_MILLIS);
+        }
+    }
+
+    private void revalidate(KeySetFetcher fetcher) {
+        try {
+            revalidationExecutor.execute(() -> {
+                synchronized (this) {
+                    try {
+                        fetch(fetcher);
+                    } catch (Exception e) {
+                        LOG.warn("[JwksCache] Could not revalidate stored signing keys: {}", e.getMessage());
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("[JwksCache] Could not schedule revalidation of stored signing keys: {}", e.getMessage());
+        }
+    }
+
+    private void loadStoredKeys() {
+        final String stored = url == null ? null : diskCache.get(KeycloakDiskCache.Kind.JWKS, url);
+        if (stored == null) {
+            return;
+        }
+
+        try {
+            keys = parse(stored);
+            revalidate.set(true);
+        } catch (RuntimeException e) {
+            LOG.debug("[JwksCache] Ignoring stored signing keys of {}: {}", url, e.getMessage());
+        }
+    }
+
+    private PublicKey lookup(String keyId) {
+        final Map<String, PublicKey> current = keys;
+        if (keyId == null) {
+            return current.size() == 1 ? current.values().iterator().next() : null;
+        }
+        return current.get(keyId);
+    }
+
+    private boolean fetchedRecently() {
+        return fetched && clock.getAsLong() - lastFetchedAt < MIN_REFETCH_INTERVAL_MILLIS;
+    }
+
+    static Map<String, PublicKey> parse(String json) {
+        final Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonElement element : JsonParser.parseString(json).getAsJsonObject().getAsJsonArray("keys")) {
+            final JsonObject jwk = element.getAsJsonObject();
+            if (jwk.has("use") && !"sig".equals(jwk.get("use").getAsString())) {
+                continue;
+            }
+
+            try {
+                final PublicKey publicKey = toPublicKey(jwk);
+                if (publicKey != null) {
+                    keys.put(jwk.has("kid") ? jwk.get("kid").getAsString() : "", publicKey);
+                }
+            } catch (GeneralSecurityException e) {
+                LOG.warn("[JwksCache] Ignoring unusable signing key: {}", e.getMessage());
+            }
+        }
+        return Collections.unmodifiableMap(keys);
+    }
+
+    private static PublicKey toPublicKey(JsonObject jwk) throws GeneralSecurityException {
+        final String keyType = jwk.get("kty").getAsString();
+        if ("RSA".equals(keyType)) {
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(unsigned(jwk, "n"), unsigned(jwk, "e")));
+        }
+
+        if ("EC".equals(keyType)) {
+            final AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec(curveName(jwk.get("crv").getAsString())));
+            final ECPoint point = new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y"));
+            return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+        }
+
+        return null;
+    }
+
+    private static String curveName(String curve) throws GeneralSecurityException {
+        switch (curve) {
+            case "P-256":
+                return "secp256r1";
+            case "P-384":
+                return "secp384r1";
+            case "P-521":
+                return "secp521r1";
+            default:
+                throw new GeneralSecurityException("Unsupported curve " + curve);
+        }
+    }
+
+    private static BigInteger unsigned(JsonObject jwk, String name) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(jwk.get(name).getAsString()));
+    }
+}
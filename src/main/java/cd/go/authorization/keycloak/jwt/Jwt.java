@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.jwt;
+
+import cd.go.authorization.keycloak.exceptions.InvalidTokenException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static cd.go.authorization.keycloak.utils.Util.isBlank;
+
+public class Jwt {
+    private final JsonObject header;
+    private final JsonObject claims;
+    private final String claimsJSON;
+    private final byte[] signingInput;
+    private final byte[] signature;
+
+    private Jwt(JsonObject header, JsonObject claims, String claimsJSON, byte[] signingInput, byte[] signature) {
+        this.header = header;
+        this.claims = claims;
+        this.claimsJSON = claimsJSON;
+        this.signingInput = signingInput;
+        this.signature = signature;
+    }
+
+    public static Jwt parse(String token) {
+        if (isBlank(token)) {
+            throw new InvalidTokenException("Token must not be blank.");
+        }
+
+        final int firstDot = token.indexOf('.');
+        final int secondDot = token.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            throw new InvalidTokenException("Token is not a signed JWT.");
+        }
+
+        try {
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            final String headerJSON = new String(decoder.decode(token.substring(0, firstDot)), StandardCharsets.UTF_8);
+            final String claimsJSON = new String(decoder.decode(token.substring(firstDot + 1, secondDot)), StandardCharsets.UTF_8);
+            final byte[] signature = decoder.decode(token.substring(secondDot + 1));
+            final byte[] signingInput = token.substring(0, secondDot).getBytes(StandardCharsets.US_ASCII);
+
+            return new Jwt(JsonParser.parseString(headerJSON).getAsJsonObject(),
+                    JsonParser.parseString(claimsJSON).getAsJsonObject(),
+                    claimsJSON, signingInput, signature);
+        } catch (RuntimeException e) {
+            throw new InvalidTokenException("Token could not be parsed: " + e.getMessage());
+        }
+    }
+
+    public String algorithm() {
+        return stringValue(header, "alg");
+    }
+
+    public String keyId() {
+        return stringValue(header, "kid");
+    }
+
+    public String issuer() {
+        return stringValue(claims, "iss");
+    }
+
+    public String subject() {
+        return stringValue(claims, "sub");
+    }
+
+    public String authorizedParty() {
+        return stringValue(claims, "azp");
+    }
+
+    public List<String> audience() {
+        final JsonElement aud = claims.get("aud");
+        if (aud == null || aud.isJsonNull()) {
+            return Collections.emptyList();
+        }
+
+        if (aud.isJsonArray()) {
+            final JsonArray array = aud.getAsJsonArray();
+            final List<String> audience = new ArrayList<>(array.size());
+            for (JsonElement element : array) {
+                audience.add(element.getAsString());
+            }
+            return audience;
+        }
+
+        return Collections.singletonList(aud.getAsString());
+    }
+
+    public long expiresAt() {
+        return longValue(claims, "exp");
+    }
+
+    public long notBefore() {
+        return longValue(claims, "nbf");
+    }
+
+    public JsonObject claims() {
+        return claims;
+    }
+
+    public String claimsJSON() {
+        return claimsJSON;
+    }
+
+    byte[] signingInput() {
+        return signingInput;
+    }
+
+    byte[] signature() {
+        return signature;
+    }
+
+    private static String stringValue(JsonObject object, String name) {
+        final JsonElement element = object.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static long longValue(JsonObject object, String name) {
+        final JsonElement element = object.get(name);
+        return element == null || element.isJsonNull() ? 0 : element.getAsLong();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.jwt;
+
+import cd.go.authorization.keycloak.exceptions.InvalidTokenException;
+import cd.go.authorization.keycloak.exceptions.TokenExpiredException;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.function.LongSupplier;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Verifies a Keycloak issued JWT offline: signature against the realm's JWKS, expiry, issuer and audience.
+ * Keycloak access tokens usually carry {@code aud: account}, so the client id is also accepted as the
+ * authorized party ({@code azp}).
+ */
+public class JwtVerifier {
+    private static final long CLOCK_SKEW_SECONDS = 30;
+
+    private final String issuer;
+    private final String audience;
+    private final JwksCache jwksCache;
+    private final JwksCache.KeySetFetcher keySetFetcher;
+    private final LongSupplier clock;
+
+    public JwtVerifier(String issuer, String audience, JwksCache jwksCache, JwksCache.KeySetFetcher keySetFetcher) {
+        this(issuer, audience, jwksCache, keySetFetcher, System::currentTimeMillis);
+    }
+
+    JwtVerifier(String issuer, String audience, JwksCache jwksCache, JwksCache.KeySetFetcher keySetFetcher, LongSupplier clock) {
+        this.issuer = issuer;
+        this.audience = audience;
+        this.jwksCache = jwksCache;
+        this.keySetFetcher = keySetFetcher;
+        this.clock = clock;
+    }
+
+    public Jwt verify(String token) throws IOException {
+        final Jwt jwt = Jwt.parse(token);
+        final String algorithm = signatureAlgorithm(jwt.algorithm());
+
+        final PublicKey key = signingKey(jwt.keyId());
+        if (key == null) {
+            throw new InvalidTokenException(format("No signing key found for key id `{0}`.", jwt.keyId()));
+        }
+
+        if (!hasValidSignature(jwt, algorithm, key)) {
+            throw new InvalidTokenException("Token signature is invalid.");
+        }
+
+        final long now = clock.getAsLong() / 1000;
+        if (jwt.expiresAt() == 0 || now - CLOCK_SKEW_SECONDS >= jwt.expiresAt()) {
+            throw new TokenExpiredException("Token has expired.");
+        }
+
+        if (jwt.notBefore() != 0 && now + CLOCK_SKEW_SECONDS < jwt.notBefore()) {
+            throw new InvalidTokenException("Token is not valid yet.");
+        }
+
+        if (!issuer.equals(jwt.issuer())) {
+            throw new InvalidTokenException(format("Token issuer `{0}` does not match `{1}`.", jwt.issuer(), issuer));
+        }
+
+        if (!jwt.audience().contains(audience) && !audience.equals(jwt.authorizedParty())) {
+            throw new InvalidTokenException(format("Token is not issued for client `{0}`.", audience));
+        }
+
+        return jwt;
+    }
+
+    private PublicKey signingKey(String keyId) throws IOException {
+        try {
+            return jwksCache.key(keyId, keySetFetcher);
+        } catch (InvalidTokenException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IOException(format("Could not fetch signing keys: {0}", e.getMessage()), e);
+        }
+    }
+
+    private static boolean hasValidSignature(Jwt jwt, String algorithm, PublicKey key) {
+        try {
+            final Signature signature = Signature.getInstance(algorithm);
+            signature.initVerify(key);
+            signature.update(jwt.signingInput());
+            return signature.verify(jwt.signature());
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static String signatureAlgorithm(String algorithm) {
+        if (algorithm == null) {
+            throw new InvalidTokenException("Token does not declare a signing algorithm.");
+        }
+
+        switch (algorithm) {
+            case "RS256":
+                return "SHA256withRSA";
+            case "RS384":
+                return "SHA384withRSA";
+            case "RS512":
+                return "SHA512withRSA";
+            case "ES256":
+                return "SHA256withECDSAinP1363Format";
+            case "ES384":
+                return "SHA384withECDSAinP1363Format";
+            case "ES512":
+                return "SHA512withECDSAinP1363Format";
+            default:
+                throw new InvalidTokenException(format("Unsupported signing algorithm `{0}`.", algorithm));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static cd.go.authorization.keycloak.KeycloakPlugin.LOG;
+
+/**
+ * Logs a one-line summary of {@link PluginMetrics} every few minutes. When the GoCD server is started with
+ * {@code -Dcd.go.authorization.keycloak.metrics.file=<path>}, the JSON snapshot is also written to that file.
+ */
+public class MetricsReporter {
+    private static final String METRICS_FILE_PROPERTY = "cd.go.authorization.keycloak.metrics.file";
+    private static final long REPORT_INTERVAL_MINUTES = 5;
+    private static final MetricsReporter REPORTER = new MetricsReporter(PluginMetrics.instance(), metricsFile());
+
+    private final PluginMetrics metrics;
+    private final Path metricsFile;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    MetricsReporter(PluginMetrics metrics, Path metricsFile) {
+        this.metrics = metrics;
+        this.metricsFile = metricsFile;
+    }
+
+    public static MetricsReporter instance() {
+        return REPORTER;
+    }
+
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "keycloak-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, REPORT_INTERVAL_MINUTES, REPORT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    void report() {
+        try {
+            final String summary = metrics.summary();
+            if (!summary.isEmpty()) {
+                LOG.info("[Metrics] " + summary);
+            }
+
+            if (metricsFile != null) {
+                final Path temporaryFile = metricsFile.resolveSibling(metricsFile.getFileName() + ".tmp");
+                Files.write(temporaryFile, metrics.toJSON().toString().getBytes(StandardCharsets.UTF_8));
+                Files.move(temporaryFile, metricsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("[Metrics] Could not report metrics: {}", e.getMessage());
+        }
+    }
+
+    private static Path metricsFile() {
+        final String file = System.getProperty(METRICS_FILE_PROPERTY);
+        return file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.metrics;
+
+import com.google.gson.JsonObject;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of the plugin's latency histograms, counters and gauges. Instruments are
+ * created on first use and never removed, so the hot path is a map lookup and an atomic add.
+ */
+public class PluginMetrics {
+    public static final String KEYCLOAK_TOKEN = "keycloak.token";
+    public static final String KEYCLOAK_REFRESH = "keycloak.refresh";
+    public static final String KEYCLOAK_INTROSPECT = "keycloak.introspect";
+    public static final String KEYCLOAK_USERINFO = "keycloak.userinfo";
+    public static final String KEYCLOAK_USERS = "keycloak.users";
+    public static final String KEYCLOAK_DISCOVERY = "keycloak.discovery";
+    public static final String KEYCLOAK_JWKS = "keycloak.jwks";
+    public static final String ATTEMPT_SUFFIX = ".attempt";
+    public static final String REQUEST_PREFIX = "request.";
+    public static final String ERRORS_SUFFIX = ".errors";
+    public static final String INTROSPECTION_CACHE = "cache.introspection";
+    public static final String ROLE_DECISION_CACHE = "cache.role-decisions";
+    public static final String REFRESHED_TOKENS = "cache.refreshed-tokens";
+    public static final String HITS_SUFFIX = ".hits";
+    public static final String MISSES_SUFFIX = ".misses";
+
+    private static final PluginMetrics METRICS = new PluginMetrics();
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongAdder> adders = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongSupplier> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    PluginMetrics() {
+    }
+
+    public static PluginMetrics instance() {
+        return METRICS;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        final LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public void increment(String name) {
+        LongAdder counter = adders.get(name);
+        if (counter == null) {
+            counter = adders.computeIfAbsent(name, key -> {
+                final LongAdder adder = new LongAdder();
+                counters.put(key, adder::sum);
+                return adder;
+            });
+        }
+        counter.increment();
+    }
+
+    public void cacheLookup(String cache, boolean hit) {
+        increment(cache + (hit ? HITS_SUFFIX : MISSES_SUFFIX));
+    }
+
+    public void counter(String name, LongSupplier value) {
+        counters.put(name, value);
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public <T> CompletableFuture<T> time(String name, CompletableFuture<T> future) {
+        final long startedAt = System.nanoTime();
+        return future.whenComplete((result, error) -> {
+            histogram(name).record(System.nanoTime() - startedAt);
+            if (error != null) {
+                increment(name + ERRORS_SUFFIX);
+            }
+        });
+    }
+
+    public long count(String name) {
+        final LongSupplier counter = counters.get(name);
+        return counter == null ? 0 : counter.getAsLong();
+    }
+
+    public JsonObject toJSON() {
+        final JsonObject json = new JsonObject();
+        final JsonObject latencies = new JsonObject();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            final LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            final JsonObject histogram = new JsonObject();
+            histogram.addProperty("count", snapshot.count());
+            histogram.addProperty("mean_micros", snapshot.meanMicros());
+            histogram.addProperty("p50_micros", snapshot.p50Micros());
+            histogram.addProperty("p90_micros", snapshot.p90Micros());
+            histogram.addProperty("p99_micros", snapshot.p99Micros());
+            histogram.addProperty("max_micros", snapshot.maxMicros());
+            latencies.add(entry.getKey(), histogram);
+        }
+        json.add("latencies", latencies);
+
+        final JsonObject counts = new JsonObject();
+        counters.forEach((name, counter) -> counts.addProperty(name, counter.getAsLong()));
+        json.add("counters", counts);
+
+        final JsonObject values = new JsonObject();
+        gauges.forEach((name, gauge) -> values.addProperty(name, gauge.getAsLong()));
+        json.add("gauges", values);
+        return json;
+    }
+
+    public String summary() {
+        final StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            final LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            summary.append(String.format(Locale.ROOT, "%s count=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms; ", entry.getKey(), snapshot.count(),
+                    snapshot.p50Micros() / 1000.0, snapshot.p90Micros() / 1000.0, snapshot.p99Micros() / 1000.0, snapshot.maxMicros() / 1000.0));
+        }
+        counters.forEach((name, counter) -> summary.append(name).append('=').append(counter.getAsLong()).append("; "));
+        gauges.forEach((name, gauge) -> summary.append(name).append('=').append(gauge.getAsLong()).append("; "));
+        return summary.length() == 0 ? "" : summary.substring(0, summary.length() - 2);
+    }
+}
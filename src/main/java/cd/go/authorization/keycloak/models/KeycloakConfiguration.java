@@ -19,48 +19,94 @@ package cd.go.authorization.keycloak.models;
 import cd.go.authorization.keycloak.KeycloakApiClient;
 import cd.go.authorization.keycloak.annotation.ProfileField;
 import cd.go.authorization.keycloak.annotation.Validatable;
+import cd.go.authorization.keycloak.utils.Interner;
+import cd.go.authorization.keycloak.utils.JsonStreams;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
-import com.google.gson.reflect.TypeToken;
-
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static cd.go.authorization.keycloak.utils.Util.GSON;
+import static cd.go.authorization.keycloak.utils.Util.isNotBlank;
 
+/**
+ * Immutable auth config. Deserialized configurations are interned by content, so identical configs sent with
+ * successive GoCD requests resolve to the same instance and share its {@link KeycloakApiClient}.
+ */
+@JsonAdapter(KeycloakConfiguration.Adapter.class)
 public class KeycloakConfiguration implements Validatable {
+    private static final Interner<KeycloakConfiguration> INTERNER = new Interner<>(256);
+
     @Expose
     @SerializedName("KeycloakEndpoint")
     @ProfileField(key = "KeycloakEndpoint", required = true, secure = false)
-    private String keycloakEndpoint;
+    private final String keycloakEndpoint;
 
     @Expose
     @SerializedName("KeycloakRealm")
     @ProfileField(key = "KeycloakRealm", required = true, secure = false)
-    private String keycloakRealm;
+    private final String keycloakRealm;
 
     @Expose
     @SerializedName("ClientId")
     @ProfileField(key = "ClientId", required = true, secure = false)
-    private String clientId;
+    private final String clientId;
 
     @Expose
     @SerializedName("ClientSecret")
     @ProfileField(key = "ClientSecret", required = true, secure = true)
-    private String clientSecret;
+    private final String clientSecret;
 
-    private KeycloakApiClient keycloakApiClient;
+    @Expose
+    @SerializedName("LocalTokenValidation")
+    @ProfileField(key = "LocalTokenValidation", required = false, secure = false)
+    private final String localTokenValidation;
 
-    public KeycloakConfiguration() {
-    }
+    @Expose
+    @SerializedName("UseIdTokenClaims")
+    @ProfileField(key = "UseIdTokenClaims", required = false, secure = false)
+    private final String useIdTokenClaims;
+
+    private final List<String> keycloakEndpoints;
+    private volatile KeycloakApiClient keycloakApiClient;
 
     public KeycloakConfiguration(String keycloakEndpoint, String clientId, String clientSecret) {
+        this(keycloakEndpoint, null, clientId, clientSecret, null, null);
+    }
+
+    private KeycloakConfiguration(String keycloakEndpoint, String keycloakRealm, String clientId, String clientSecret,
+                                  String localTokenValidation, String useIdTokenClaims) {
         this.keycloakEndpoint = keycloakEndpoint;
+        this.keycloakRealm = keycloakRealm;
         this.clientId = clientId;
         this.clientSecret = clientSecret;
+        this.localTokenValidation = localTokenValidation;
+        this.useIdTokenClaims = useIdTokenClaims;
+        this.keycloakEndpoints = parseEndpoints(keycloakEndpoint);
+    }
+
+    static KeycloakConfiguration intern(String keycloakEndpoint, String keycloakRealm, String clientId, String clientSecret,
+                                        String localTokenValidation, String useIdTokenClaims) {
+        final String key = Interner.key(keycloakEndpoint, keycloakRealm, clientId, clientSecret, localTokenValidation, useIdTokenClaims);
+        return INTERNER.intern(key, () -> new KeycloakConfiguration(keycloakEndpoint, keycloakRealm, clientId, clientSecret,
+                localTokenValidation, useIdTokenClaims));
     }
 
     public String keycloakEndpoint() {
-        return keycloakEndpoint;
+        return keycloakEndpoints.isEmpty() ? keycloakEndpoint : keycloakEndpoints.get(0);
+    }
+
+    public List<String> keycloakEndpoints() {
+        return keycloakEndpoints;
     }
 
     public String keycloakRealm() {
@@ -75,6 +121,14 @@ public class KeycloakConfiguration implements Validatable {
         return clientSecret;
     }
 
+    public boolean localTokenValidation() {
+        return Boolean.parseBoolean(localTokenValidation);
+    }
+
+    public boolean useIdTokenClaims() {
+        return Boolean.parseBoolean(useIdTokenClaims);
+    }
+
     public String toJSON() {
         return GSON.toJson(this);
     }
@@ -84,15 +138,100 @@ public class KeycloakConfiguration implements Validatable {
     }
 
     public Map<String, String> toProperties() {
-        return GSON.fromJson(toJSON(), new TypeToken<Map<String, String>>() {
-        }.getType());
+        final Map<String, String> properties = new LinkedHashMap<>();
+        putIfNotNull(properties, "KeycloakEndpoint", keycloakEndpoint);
+        putIfNotNull(properties, "KeycloakRealm", keycloakRealm);
+        putIfNotNull(properties, "ClientId", clientId);
+        putIfNotNull(properties, "ClientSecret", clientSecret);
+        putIfNotNull(properties, "LocalTokenValidation", localTokenValidation);
+        putIfNotNull(properties, "UseIdTokenClaims", useIdTokenClaims);
+        return properties;
     }
 
     public KeycloakApiClient keycloakApiClient() {
-        if (keycloakApiClient == null) {
-            keycloakApiClient = new KeycloakApiClient(this);
+        KeycloakApiClient client = keycloakApiClient;
+        if (client == null) {
+            synchronized (this) {
+                client = keycloakApiClient;
+                if (client == null) {
+                    client = new KeycloakApiClient(this);
+                    keycloakApiClient = client;
+                }
+            }
+        }
+
+        return client;
+    }
+
+    static void putIfNotNull(Map<String, String> properties, String key, String value) {
+        if (value != null) {
+            properties.put(key, value);
         }
+    }
+
+    private static List<String> parseEndpoints(String keycloakEndpoint) {
+        final List<String> endpoints = new ArrayList<>();
+        if (keycloakEndpoint != null) {
+            for (String endpoint : keycloakEndpoint.split(",")) {
+                if (isNotBlank(endpoint)) {
+                    endpoints.add(endpoint.trim());
+                }
+            }
+        }
+        return Collections.unmodifiableList(endpoints);
+    }
 
-        return keycloakApiClient;
+    static class Adapter extends TypeAdapter<KeycloakConfiguration> {
+        @Override
+        public void write(JsonWriter out, KeycloakConfiguration configuration) throws IOException {
+            out.beginObject();
+            out.name("KeycloakEndpoint").value(configuration.keycloakEndpoint);
+            out.name("KeycloakRealm").value(configuration.keycloakRealm);
+            out.name("ClientId").value(configuration.clientId);
+            out.name("ClientSecret").value(configuration.clientSecret);
+            out.name("LocalTokenValidation").value(configuration.localTokenValidation);
+            out.name("UseIdTokenClaims").value(configuration.useIdTokenClaims);
+            out.endObject();
+        }
+
+        @Override
+        public KeycloakConfiguration read(JsonReader in) throws IOException {
+            if (!JsonStreams.beginObject(in)) {
+                return null;
+            }
+
+            String keycloakEndpoint = null;
+            String keycloakRealm = null;
+            String clientId = null;
+            String clientSecret = null;
+            String localTokenValidation = null;
+            String useIdTokenClaims = null;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "KeycloakEndpoint":
+                        keycloakEndpoint = JsonStreams.nextString(in);
+                        break;
+                    case "KeycloakRealm":
+                        keycloakRealm = JsonStreams.nextString(in);
+                        break;
+                    case "ClientId":
+                        clientId = JsonStreams.nextString(in);
+                        break;
+                    case "ClientSecret":
+                        clientSecret = JsonStreams.nextString(in);
+                        break;
+                    case "LocalTokenValidation":
+                        localTokenValidation = JsonStreams.nextString(in);
+                        break;
+                    case "UseIdTokenClaims":
+                        useIdTokenClaims = JsonStreams.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return intern(keycloakEndpoint, keycloakRealm, clientId, clientSecret, localTokenValidation, useIdTokenClaims);
+        }
     }
 }
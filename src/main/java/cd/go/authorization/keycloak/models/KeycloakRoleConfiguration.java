@@ -18,40 +18,61 @@ package cd.go.authorization.keycloak.models;
 
 import cd.go.authorization.keycloak.annotation.ProfileField;
 import cd.go.authorization.keycloak.annotation.Validatable;
+import cd.go.authorization.keycloak.utils.Interner;
+import cd.go.authorization.keycloak.utils.JsonStreams;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static cd.go.authorization.keycloak.models.KeycloakConfiguration.putIfNotNull;
 import static cd.go.authorization.keycloak.utils.Util.*;
 
+/**
+ * Immutable role config with its groups and users parsed once. Deserialized instances are interned by content.
+ */
+@JsonAdapter(KeycloakRoleConfiguration.Adapter.class)
 public class KeycloakRoleConfiguration implements Validatable {
+    private static final Interner<KeycloakRoleConfiguration> INTERNER = new Interner<>(4096);
+
     @Expose
     @SerializedName("Groups")
     @ProfileField(key = "Groups", required = false, secure = false)
-    private String groups;
+    private final String groups;
 
     @Expose
     @SerializedName("Users")
     @ProfileField(key = "Users", required = false, secure = false)
-    private String users;
+    private final String users;
 
-    public KeycloakRoleConfiguration() {
-    }
+    private final List<String> groupList;
+    private final List<String> userList;
 
     public KeycloakRoleConfiguration(String groups, String users) {
         this.groups = groups;
         this.users = users;
+        this.groupList = Collections.unmodifiableList(listFromCommaSeparatedString(groups));
+        this.userList = Collections.unmodifiableList(listFromCommaSeparatedString(toLowerCase(users)));
+    }
+
+    static KeycloakRoleConfiguration intern(String groups, String users) {
+        return INTERNER.intern(Interner.key(groups, users), () -> new KeycloakRoleConfiguration(groups, users));
     }
 
     public List<String> groups() {
-        return listFromCommaSeparatedString(groups);
+        return groupList;
     }
 
     public List<String> users() {
-        return listFromCommaSeparatedString(toLowerCase(users));
+        return userList;
     }
 
     public String toJSON() {
@@ -63,11 +84,65 @@ public class KeycloakRoleConfiguration implements Validatable {
     }
 
     public Map<String, String> toProperties() {
-        return GSON.fromJson(toJSON(), new TypeToken<Map<String, String>>() {
-        }.getType());
+        final Map<String, String> properties = new LinkedHashMap<>();
+        putIfNotNull(properties, "Groups", groups);
+        putIfNotNull(properties, "Users", users);
+        return properties;
     }
 
     public boolean hasConfiguration() {
         return isNotBlank(groups) || isNotBlank(users);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        KeycloakRoleConfiguration that = (KeycloakRoleConfiguration) o;
+
+        if (groups != null ? !groups.equals(that.groups) : that.groups != null) return false;
+        return users != null ? users.equals(that.users) : that.users == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = groups != null ? groups.hashCode() : 0;
+        result = 31 * result + (users != null ? users.hashCode() : 0);
+        return result;
+    }
+
+    static class Adapter extends TypeAdapter<KeycloakRoleConfiguration> {
+        @Override
+        public void write(JsonWriter out, KeycloakRoleConfiguration configuration) throws IOException {
+            out.beginObject();
+            out.name("Groups").value(configuration.groups);
+            out.name("Users").value(configuration.users);
+            out.endObject();
+        }
+
+        @Override
+        public KeycloakRoleConfiguration read(JsonReader in) throws IOException {
+            if (!JsonStreams.beginObject(in)) {
+                return null;
+            }
+
+            String groups = null;
+            String users = null;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "Groups":
+                        groups = JsonStreams.nextString(in);
+                        break;
+                    case "Users":
+                        users = JsonStreams.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return intern(groups, users);
+        }
+    }
 }
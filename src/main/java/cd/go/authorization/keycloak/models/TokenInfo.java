@@ -16,12 +16,24 @@
 
 package cd.go.authorization.keycloak.models;
 
+import cd.go.authorization.keycloak.utils.JsonStreams;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
 
 import static cd.go.authorization.keycloak.utils.Util.GSON;
 
+@JsonAdapter(TokenInfo.Adapter.class)
 public class TokenInfo {
+    private static final Adapter ADAPTER = new Adapter();
+
+
     @SerializedName("access_token")
     @Expose
     private String accessToken;
@@ -34,15 +46,23 @@ public class TokenInfo {
     @SerializedName("refresh_token")
     @Expose
     private String refreshToken;
+    @SerializedName("id_token")
+    @Expose
+    private String idToken;
 
     TokenInfo() {
     }
 
     public TokenInfo(String accessToken, long expiresIn, String tokenType, String refreshToken) {
+        this(accessToken, expiresIn, tokenType, refreshToken, null);
+    }
+
+    public TokenInfo(String accessToken, long expiresIn, String tokenType, String refreshToken, String idToken) {
         this.accessToken = accessToken;
         this.expiresIn = expiresIn;
         this.tokenType = tokenType;
         this.refreshToken = refreshToken;
+        this.idToken = idToken;
     }
 
     public String accessToken() {
@@ -61,6 +81,10 @@ public class TokenInfo {
         return refreshToken;
     }
 
+    public String idToken() {
+        return idToken;
+    }
+
     public String toJSON() {
         return GSON.toJson(this);
     }
@@ -69,6 +93,10 @@ public class TokenInfo {
         return GSON.fromJson(json, TokenInfo.class);
     }
 
+    public static TokenInfo fromJSON(Reader reader) {
+        return JsonStreams.read(ADAPTER, reader);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -80,7 +108,9 @@ public class TokenInfo {
         if (accessToken != null ? !accessToken.equals(tokenInfo.accessToken) : tokenInfo.accessToken != null)
             return false;
         if (tokenType != null ? !tokenType.equals(tokenInfo.tokenType) : tokenInfo.tokenType != null) return false;
-        return refreshToken != null ? refreshToken.equals(tokenInfo.refreshToken) : tokenInfo.refreshToken == null;
+        if (refreshToken != null ? !refreshToken.equals(tokenInfo.refreshToken) : tokenInfo.refreshToken != null)
+            return false;
+        return idToken != null ? idToken.equals(tokenInfo.idToken) : tokenInfo.idToken == null;
     }
 
     @Override
@@ -89,6 +119,52 @@ public class TokenInfo {
         result = 31 * result + (int) (expiresIn ^ (expiresIn >>> 32));
         result = 31 * result + (tokenType != null ? tokenType.hashCode() : 0);
         result = 31 * result + (refreshToken != null ? refreshToken.hashCode() : 0);
+        result = 31 * result + (idToken != null ? idToken.hashCode() : 0);
         return result;
     }
+
+    static class Adapter extends TypeAdapter<TokenInfo> {
+        @Override
+        public void write(JsonWriter out, TokenInfo tokenInfo) throws IOException {
+            out.beginObject();
+            out.name("access_token").value(tokenInfo.accessToken);
+            out.name("expires_in").value(tokenInfo.expiresIn);
+            out.name("token_type").value(tokenInfo.tokenType);
+            out.name("refresh_token").value(tokenInfo.refreshToken);
+            out.name("id_token").value(tokenInfo.idToken);
+            out.endObject();
+        }
+
+        @Override
+        public TokenInfo read(JsonReader in) throws IOException {
+            if (!JsonStreams.beginObject(in)) {
+                return null;
+            }
+
+            final TokenInfo tokenInfo = new TokenInfo();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "access_token":
+                        tokenInfo.accessToken = JsonStreams.nextString(in);
+                        break;
+                    case "expires_in":
+                        tokenInfo.expiresIn = JsonStreams.nextLong(in);
+                        break;
+                    case "token_type":
+                        tokenInfo.tokenType = JsonStreams.nextString(in);
+                        break;
+                    case "refresh_token":
+                        tokenInfo.refreshToken = JsonStreams.nextString(in);
+                        break;
+                    case "id_token":
+                        tokenInfo.idToken = JsonStreams.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return tokenInfo;
+        }
+    }
 }
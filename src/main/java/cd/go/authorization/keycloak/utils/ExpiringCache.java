@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, concurrent cache whose entries expire at an absolute time. When the cache grows past its
+ * maximum size, expired entries are purged first and then the entries closest to expiry are evicted.
+ */
+public class ExpiringCache<K, V> {
+    private final int maximumSize;
+    private final LongSupplier clock;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringCache(int maximumSize) {
+        this(maximumSize, System::currentTimeMillis);
+    }
+
+    public ExpiringCache(int maximumSize, LongSupplier clock) {
+        this.maximumSize = maximumSize;
+        this.clock = clock;
+    }
+
+    public V get(K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (entry.expiresAt <= clock.getAsLong()) {
+            entries.remove(key, entry);
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value, long expiresAt) {
+        if (expiresAt <= clock.getAsLong()) {
+            return;
+        }
+
+        entries.put(key, new Entry<>(value, expiresAt));
+        if (entries.size() > maximumSize) {
+            evict();
+        }
+    }
+
+    public V remove(K key) {
+        final Entry<V> entry = entries.remove(key);
+        return entry == null || entry.expiresAt <= clock.getAsLong() ? null : entry.value;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private synchronized void evict() {
+        if (entries.size() <= maximumSize) {
+            return;
+        }
+
+        final long now = clock.getAsLong();
+        entries.entrySet().removeIf(entry -> entry.getValue().expiresAt <= now);
+
+        final int excess = entries.size() - maximumSize * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+
+        final List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().expiresAt));
+        for (int i = 0; i < excess && i < candidates.size(); i++) {
+            if (entries.remove(candidates.get(i).getKey(), candidates.get(i).getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
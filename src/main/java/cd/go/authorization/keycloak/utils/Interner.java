@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Maps equal content keys to one canonical instance. Plugin configurations arrive with every GoCD request
+ * but rarely change, so the map stays small; it is cleared if it ever grows past its maximum size.
+ */
+public class Interner<T> {
+    private final int maximumSize;
+    private final ConcurrentMap<String, T> instances = new ConcurrentHashMap<>();
+
+    public Interner(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public T intern(String key, Supplier<T> factory) {
+        final T existing = instances.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (instances.size() >= maximumSize) {
+            instances.clear();
+        }
+        return instances.computeIfAbsent(key, ignored -> factory.get());
+    }
+
+    public static String key(String... parts) {
+        final StringBuilder key = new StringBuilder();
+        for (String part : parts) {
+            if (part == null) {
+                key.append('\u0001');
+            } else {
+                key.append(part.length()).append(':').append(part);
+            }
+        }
+        return key.toString();
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public void clear() {
+        instances.clear();
+    }
+}
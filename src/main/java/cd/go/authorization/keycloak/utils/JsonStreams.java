@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Null-tolerant reads for hand-written {@link TypeAdapter}s. Values of an unexpected type are
+ * skipped rather than failing the whole document.
+ */
+public final class JsonStreams {
+    private JsonStreams() {
+    }
+
+    public static <T> T read(TypeAdapter<T> adapter, Reader reader) {
+        try {
+            return adapter.read(new JsonReader(reader));
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    public static String nextString(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+            return token == JsonToken.BOOLEAN ? String.valueOf(in.nextBoolean()) : in.nextString();
+        }
+        in.skipValue();
+        return null;
+    }
+
+    public static long nextLong(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            return in.nextLong();
+        }
+        in.skipValue();
+        return 0;
+    }
+
+    public static BigInteger nextBigInteger(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            return new BigInteger(in.nextString());
+        }
+        in.skipValue();
+        return null;
+    }
+
+    public static boolean nextBoolean(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return in.nextBoolean();
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        in.skipValue();
+        return false;
+    }
+
+    public static List<String> nextStringList(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return null;
+        }
+
+        final List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            final String value = nextString(in);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        in.endArray();
+        return values;
+    }
+
+    public static boolean beginObject(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return false;
+        }
+        in.beginObject();
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.function.Supplier;
+
+/**
+ * Thin facade over the GoCD plugin {@link Logger}. Messages use {@code {}} placeholders or suppliers, so
+ * arguments are only formatted by the GoCD logging service when the level is enabled.
+ */
+public class PluginLogger {
+    private final Logger logger;
+
+    PluginLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    public static PluginLogger getLoggerFor(Class<?> type) {
+        return new PluginLogger(Logger.getLoggerFor(type));
+    }
+
+    public void debug(String message) {
+        logger.debug(message);
+    }
+
+    public void debug(String message, Object... arguments) {
+        logger.debug(message, arguments);
+    }
+
+    public void debug(Supplier<String> message) {
+        logger.debug("{}", lazy(message));
+    }
+
+    public void info(String message) {
+        logger.info(message);
+    }
+
+    public void info(String message, Object... arguments) {
+        logger.info(message, arguments);
+    }
+
+    public void warn(String message) {
+        logger.warn(message);
+    }
+
+    public void warn(String message, Object... arguments) {
+        logger.warn(message, arguments);
+    }
+
+    public void error(String message, Throwable throwable) {
+        logger.error(message, throwable);
+    }
+
+    public void error(String message, Object... arguments) {
+        logger.error(message, arguments);
+    }
+
+    public static Object lazy(Supplier<?> supplier) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return String.valueOf(supplier.get());
+            }
+        };
+    }
+
+    public static Object fingerprint(String token) {
+        return lazy(() -> token == null ? "none" : Util.sha256(token).substring(0, 8));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AuthorizationStatesTest {
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final AuthorizationStates states = new AuthorizationStates(clock::get);
+
+    @Test
+    public void shouldConsumeIssuedStateOnlyOnce() {
+        final AuthorizationStates.Issued issued = states.issue("keycloak");
+
+        assertThat(issued.state(), not(issued.nonce()));
+        assertThat(states.consume(issued.state()), is(sameInstance(issued)));
+        assertThat(states.consume(issued.state()), is(nullValue()));
+        assertThat(issued.authConfigId(), is("keycloak"));
+    }
+
+    @Test
+    public void shouldForgetStateAfterTimeToLive() {
+        final AuthorizationStates.Issued issued = states.issue("keycloak");
+
+        clock.addAndGet(AuthorizationStates.TIME_TO_LIVE_MILLIS);
+
+        assertThat(states.consume(issued.state()), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRejectUnknownOrMissingState() {
+        assertThat(states.consume("forged-state"), is(nullValue()));
+        assertThat(states.consume(null), is(nullValue()));
+    }
+}
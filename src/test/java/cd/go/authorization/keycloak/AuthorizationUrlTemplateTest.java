@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AuthorizationUrlTemplateTest {
+    private static final String SCOPE = "openid profile email groups roles";
+
+    @Test
+    public void shouldBuildSameUrlAsHttpUrl() {
+        final KeycloakEndpoints endpoints = KeycloakEndpoints.legacy("https://sso.example.com", "master");
+        final AuthorizationUrlTemplate template = new AuthorizationUrlTemplate(endpoints, "gocd client", SCOPE);
+
+        final String callbackUrl = "https://gocd.example.com/go/plugin/cd.go.authorization.keycloak/authenticate?a=b&c=d e";
+
+        assertThat(template.url(callbackUrl, "state-1", "nonce_1"), is(expected(endpoints, "gocd client", callbackUrl, "state-1", "nonce_1")));
+        assertThat(template.url(callbackUrl, "st+te/=", "n~nce"), is(expected(endpoints, "gocd client", callbackUrl, "st+te/=", "n~nce")));
+    }
+
+    @Test
+    public void shouldKeepExistingQueryOfAuthorizationEndpoint() {
+        final HttpUrl authorization = HttpUrl.parse("https://sso.example.com/auth?kc_idp_hint=github");
+        final HttpUrl issuer = HttpUrl.parse("https://sso.example.com/realms/master");
+        final KeycloakEndpoints endpoints = new KeycloakEndpoints(issuer.toString(), authorization, issuer, issuer, issuer, issuer);
+        final AuthorizationUrlTemplate template = new AuthorizationUrlTemplate(endpoints, "gocd", SCOPE);
+
+        assertThat(template.url("http://localhost/callback", "s", "n"), is(expected(endpoints, "gocd", "http://localhost/callback", "s", "n")));
+    }
+
+    @Test
+    public void shouldFollowCallbackUrlChanges() {
+        final KeycloakEndpoints endpoints = KeycloakEndpoints.legacy("https://sso.example.com", "master");
+        final AuthorizationUrlTemplate template = new AuthorizationUrlTemplate(endpoints, "gocd", SCOPE);
+
+        template.url("http://one.example.com/callback", "s", "n");
+
+        assertThat(template.url("http://two.example.com/callback", "s", "n"), is(expected(endpoints, "gocd", "http://two.example.com/callback", "s", "n")));
+        assertThat(template.endpoints(), is(sameInstance(endpoints)));
+    }
+
+    private static String expected(KeycloakEndpoints endpoints, String clientId, String callbackUrl, String state, String nonce) {
+        return endpoints.authorization().newBuilder()
+                .addQueryParameter("client_id", clientId)
+                .addQueryParameter("redirect_uri", callbackUrl)
+                .addQueryParameter("response_type", "code")
+                .addQueryParameter("scope", SCOPE)
+                .addQueryParameter("state", state)
+                .addQueryParameter("nonce", nonce)
+                .build().toString();
+    }
+}
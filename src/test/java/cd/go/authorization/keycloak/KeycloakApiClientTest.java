@@ -16,24 +16,46 @@
 
 package cd.go.authorization.keycloak;
 
+import cd.go.authorization.keycloak.exceptions.KeycloakUnavailableException;
+import cd.go.authorization.keycloak.jwt.SigningKey;
+import cd.go.authorization.keycloak.metrics.PluginMetrics;
 import cd.go.authorization.keycloak.models.KeycloakConfiguration;
 import cd.go.authorization.keycloak.models.TokenInfo;
+import cd.go.authorization.keycloak.utils.CircuitBreaker;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -41,12 +63,18 @@ public class KeycloakApiClientTest {
 
     @Mock
     private KeycloakConfiguration KeycloakConfiguration;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    private TokenRefresher tokenRefresher;
     private MockWebServer server;
     private KeycloakApiClient KeycloakApiClient;
 
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setUp() throws Exception {
         initMocks(this);
@@ -61,7 +89,13 @@ public class KeycloakApiClientTest {
 
         CallbackURL.instance().updateRedirectURL("callback-url");
 
-        KeycloakApiClient = new KeycloakApiClient(KeycloakConfiguration);
+        tokenRefresher = new TokenRefresher(scheduler, System::currentTimeMillis);
+        KeycloakApiClient = apiClient(false);
+    }
+
+    private KeycloakApiClient apiClient(boolean discoveryEnabled) {
+        return new KeycloakApiClient(KeycloakConfiguration, KeycloakHttpClients.instance().clientFor(KeycloakConfiguration),
+                new OidcDiscovery(discoveryEnabled, Runnable::run, System::currentTimeMillis), tokenRefresher, new KeycloakCircuitBreakers(2, 60_000));
     }
 
     @After
@@ -71,9 +105,55 @@ public class KeycloakApiClientTest {
 
     @Test
     public void shouldReturnAuthorizationServerUrl() throws Exception {
-        final String authorizationServerUrl = KeycloakApiClient.authorizationServerUrl("call-back-url");
+        final String authorizationServerUrl = KeycloakApiClient.authorizationServerUrl("call-back-url", "keycloak");
 
         assertThat(authorizationServerUrl, startsWith("https://example.com/auth/realms/master/protocol/openid-connect/auth?client_id=client-id&redirect_uri=call-back-url&response_type=code&scope=openid%20profile%20email%20groups%20roles&state="));
+
+        final HttpUrl url = HttpUrl.get(authorizationServerUrl);
+        final AuthorizationStates.Issued issued = AuthorizationStates.instance().consume(url.queryParameter("state"));
+        assertThat(issued.nonce(), is(url.queryParameter("nonce")));
+        assertThat(issued.authConfigId(), is("keycloak"));
+    }
+
+    @Test
+    public void shouldUseEndpointsFromDiscoveryDocument() throws Exception {
+        final KeycloakApiClient apiClient = apiClient(true);
+        final JsonObject document = new JsonObject();
+        document.addProperty("issuer", server.url("/realms/master").toString());
+        document.addProperty("token_endpoint", server.url("/realms/master/protocol/openid-connect/token").toString());
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(document.toString()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("access-token", 3600, "bearer", "refresh-token").toJSON()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("access-token", 3600, "bearer", "refresh-token").toJSON()));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        apiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+        apiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+
+        assertThat(server.getRequestCount(), is(4));
+        assertEquals("GET /auth/realms/master/.well-known/openid-configuration HTTP/1.1", server.takeRequest().getRequestLine());
+        assertEquals("GET /realms/master/.well-known/openid-configuration HTTP/1.1", server.takeRequest().getRequestLine());
+        assertEquals("POST /realms/master/protocol/openid-connect/token HTTP/1.1", server.takeRequest().getRequestLine());
+        assertEquals("POST /realms/master/protocol/openid-connect/token HTTP/1.1", server.takeRequest().getRequestLine());
+    }
+
+    @Test
+    public void shouldFallBackToLegacyEndpointsWhenDiscoveryFails() throws Exception {
+        final KeycloakApiClient apiClient = apiClient(true);
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("access-token", 3600, "bearer", "refresh-token").toJSON()));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        apiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+
+        server.takeRequest();
+        server.takeRequest();
+        assertEquals("POST /auth/realms/master/protocol/openid-connect/token HTTP/1.1", server.takeRequest().getRequestLine());
     }
 
     @Test
@@ -94,4 +174,378 @@ public class KeycloakApiClientTest {
         assertEquals("client_id=client-id&client_secret=client-secret&code=some-code&grant_type=authorization_code&redirect_uri=callback-url", request.getBody().readUtf8());
     }
 
+    @Test
+    public void shouldValidateAccessTokenLocallyWhenEnabled() throws Exception {
+        final SigningKey signingKey = new SigningKey("key-1");
+        final String issuer = server.url("/auth/realms/master").toString();
+        final String accessToken = signingKey.sign(SigningKey.claims(issuer, "client-id", System.currentTimeMillis() / 1000 + 300));
+
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(SigningKey.jwks(signingKey)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"email\": \"foo@example.com\", \"name\": \"Foo Bar\"}"));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+        when(KeycloakConfiguration.localTokenValidation()).thenReturn(true);
+
+        final KeycloakUser user = KeycloakApiClient.userProfile(new TokenInfo(accessToken, 300, "bearer", "refresh-token"));
+
+        assertThat(user.getEmail(), is("foo@example.com"));
+        assertThat(server.getRequestCount(), is(2));
+        assertEquals("GET /auth/realms/master/protocol/openid-connect/certs HTTP/1.1", server.takeRequest().getRequestLine());
+        assertEquals("GET /auth/realms/master/protocol/openid-connect/userinfo HTTP/1.1", server.takeRequest().getRequestLine());
+    }
+
+    @Test
+    public void shouldReadUserProfileFromVerifiedIdTokenClaims() throws Exception {
+        final SigningKey signingKey = new SigningKey("key-1");
+        final JsonObject claims = SigningKey.claims(server.url("/auth/realms/master").toString(), "client-id", System.currentTimeMillis() / 1000 + 300);
+        final JsonArray groups = new JsonArray();
+        groups.add("developers");
+        claims.addProperty("aud", "client-id");
+        claims.addProperty("email", "foo@example.com");
+        claims.addProperty("preferred_username", "foo");
+        claims.add("groups", groups);
+
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(SigningKey.jwks(signingKey)));
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final KeycloakUser user = KeycloakApiClient.userProfileFromIdToken(new TokenInfo("access-token", 300, "bearer", "refresh-token", signingKey.sign(claims)));
+
+        assertThat(user.getEmail(), is("foo@example.com"));
+        assertThat(user.getPreferredUsername(), is("foo"));
+        assertThat(user.groups(), contains("developers"));
+        assertThat(server.getRequestCount(), is(1));
+    }
+
+    @Test
+    public void shouldReportSigningKeyFetchFailureAsIOException() throws Exception {
+        final SigningKey signingKey = new SigningKey("key-1");
+        final JsonObject claims = SigningKey.claims(server.url("/auth/realms/master").toString(), "client-id", System.currentTimeMillis() / 1000 + 300);
+
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("internal error"));
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Could not fetch signing keys");
+
+        KeycloakApiClient.userProfileFromIdToken(new TokenInfo("access-token", 300, "bearer", "refresh-token", signingKey.sign(claims)));
+    }
+
+    @Test
+    public void shouldIntrospectActiveTokenOnlyOnceUntilItExpires() throws Exception {
+        final long expiresAt = System.currentTimeMillis() / 1000 + 300;
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": true, \"exp\": " + expiresAt + "}"));
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        assertThat(KeycloakApiClient.introspectToken("access-token"), is(true));
+        assertThat(KeycloakApiClient.introspectToken("access-token"), is(true));
+
+        assertThat(server.getRequestCount(), is(1));
+        assertEquals("POST /auth/realms/master/protocol/openid-connect/token/introspect HTTP/1.1", server.takeRequest().getRequestLine());
+    }
+
+    @Test
+    public void shouldNotCacheInactiveIntrospectionResult() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": false}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": false}"));
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        assertThat(KeycloakApiClient.introspectToken("access-token"), is(false));
+        assertThat(KeycloakApiClient.introspectToken("access-token"), is(false));
+
+        assertThat(server.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void shouldFetchUserProfileWithRefreshedTokenWhenAccessTokenIsNotActive() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/token/introspect")) {
+                    return new MockResponse().setResponseCode(200).setBody("{\"active\": false}");
+                }
+                if (request.getPath().endsWith("/token")) {
+                    return new MockResponse().setResponseCode(200).setBody(new TokenInfo("refreshed-access-token", 300, "bearer", "refreshed-refresh-token").toJSON());
+                }
+                if ("Bearer refreshed-access-token".equals(request.getHeader("Authorization"))) {
+                    return new MockResponse().setResponseCode(200).setBody("{\"email\": \"foo@example.com\", \"name\": \"Foo Bar\"}");
+                }
+                return new MockResponse().setResponseCode(401);
+            }
+        });
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final TokenInfo tokenInfo = new TokenInfo("expired-access-token", 300, "bearer", "refresh-token");
+        final KeycloakUser user = KeycloakApiClient.userProfile(tokenInfo);
+
+        assertThat(user.getEmail(), is("foo@example.com"));
+        assertThat(server.getRequestCount(), is(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(server.takeRequest().getHeader("Authorization"), not("Bearer expired-access-token"));
+        }
+        assertThat(tokenRefresher.current(tokenInfo).accessToken(), is("refreshed-access-token"));
+    }
+
+    @Test
+    public void shouldFetchUserProfileOnceIntrospectionSucceedsAndCoalesceConcurrentCalls() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().endsWith("/token/introspect")) {
+                    return new MockResponse().setResponseCode(200).setBody("{\"active\": true}").setHeadersDelay(500, TimeUnit.MILLISECONDS);
+                }
+                return new MockResponse().setResponseCode(200).setBody("{\"email\": \"foo@example.com\", \"name\": \"Foo Bar\"}").setHeadersDelay(500, TimeUnit.MILLISECONDS);
+            }
+        });
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final long startedAt = System.nanoTime();
+        final CompletableFuture<KeycloakUser> first = KeycloakApiClient.userProfileAsync(new TokenInfo("access-token", 300, "bearer", "refresh-token"));
+        final CompletableFuture<KeycloakUser> second = KeycloakApiClient.userProfileAsync(new TokenInfo("access-token", 300, "bearer", "refresh-token"));
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getEmail(), is("foo@example.com"));
+        assertThat(second.get(5, TimeUnit.SECONDS).getEmail(), is("foo@example.com"));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), lessThan(2000L));
+        assertThat(server.getRequestCount(), is(2));
+        assertThat(server.takeRequest().getPath(), endsWith("/token/introspect"));
+    }
+
+    @Test
+    public void shouldServeStoredUserProfileWhileKeycloakIsUnreachable() throws Exception {
+        final KeycloakDiskCache diskCache = new KeycloakDiskCache(temporaryFolder.getRoot().toPath().resolve(KeycloakDiskCache.FILE_NAME),
+                Runnable::run, System::currentTimeMillis);
+        final KeycloakApiClient apiClient = new KeycloakApiClient(KeycloakConfiguration, KeycloakHttpClients.instance().clientFor(KeycloakConfiguration),
+                new OidcDiscovery(false, Runnable::run, System::currentTimeMillis), tokenRefresher, new KeycloakCircuitBreakers(2, 60_000), diskCache);
+        final boolean[] unreachable = new boolean[1];
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (unreachable[0]) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                }
+                if (request.getPath().endsWith("/token/introspect")) {
+                    return new MockResponse().setResponseCode(200).setBody("{\"active\": true, \"exp\": " + (System.currentTimeMillis() / 1000 + 300) + "}");
+                }
+                return new MockResponse().setResponseCode(200).setBody("{\"email\": \"foo@example.com\", \"groups\": [\"admins\"]}");
+            }
+        });
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final TokenInfo tokenInfo = new TokenInfo("stored-profile-access-token", 300, "bearer", "refresh-token");
+        apiClient.userProfile(tokenInfo);
+        unreachable[0] = true;
+        final KeycloakUser user = apiClient.userProfile(tokenInfo);
+
+        assertThat(user.getEmail(), is("foo@example.com"));
+        assertThat(user.groups(), contains("admins"));
+    }
+
+    @Test
+    public void shouldNotServeStoredUserProfileOnceTokenHasExpired() throws Exception {
+        final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        final KeycloakDiskCache diskCache = new KeycloakDiskCache(temporaryFolder.getRoot().toPath().resolve(KeycloakDiskCache.FILE_NAME),
+                Runnable::run, clock::get);
+        final KeycloakApiClient apiClient = new KeycloakApiClient(KeycloakConfiguration, KeycloakHttpClients.instance().clientFor(KeycloakConfiguration),
+                new OidcDiscovery(false, Runnable::run, System::currentTimeMillis), tokenRefresher, new KeycloakCircuitBreakers(2, 60_000), diskCache);
+        final boolean[] unreachable = new boolean[1];
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (unreachable[0]) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                }
+                if (request.getPath().endsWith("/token/introspect")) {
+                    return new MockResponse().setResponseCode(200).setBody("{\"active\": true}");
+                }
+                return new MockResponse().setResponseCode(200).setBody("{\"email\": \"foo@example.com\"}");
+            }
+        });
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final TokenInfo tokenInfo = new TokenInfo("expiring-profile-access-token", 300, "bearer", null);
+        apiClient.userProfile(tokenInfo);
+        unreachable[0] = true;
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(301));
+
+        try {
+            apiClient.userProfile(tokenInfo);
+            fail("Expected the expired stored profile not to be served.");
+        } catch (IOException | KeycloakUnavailableException expected) {
+        }
+    }
+
+    @Test
+    public void shouldNotIntrospectTokenKeptFreshByTokenRefresher() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("access-token", 300, "bearer", "refresh-token").toJSON()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"email\": \"foo@example.com\", \"name\": \"Foo Bar\"}"));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final TokenInfo tokenInfo = KeycloakApiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+        KeycloakApiClient.userProfile(tokenInfo);
+
+        assertThat(server.getRequestCount(), is(2));
+        server.takeRequest();
+        assertEquals("GET /auth/realms/master/protocol/openid-connect/userinfo HTTP/1.1", server.takeRequest().getRequestLine());
+    }
+
+    @Test
+    public void shouldFailFastOnceKeycloakKeepsFailing() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                KeycloakApiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage(), startsWith("Api call to `/auth/realms/master/protocol/openid-connect/token` failed"));
+            }
+        }
+
+        thrown.expect(KeycloakUnavailableException.class);
+        thrown.expectMessage("Keycloak at `http://" + server.getHostName() + ":" + server.getPort() + "` is unavailable");
+
+        try {
+            KeycloakApiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+        } finally {
+            assertThat(server.getRequestCount(), is(2));
+        }
+    }
+
+    @Test
+    public void shouldRetryIdempotentCallOnServiceUnavailableAndRecordEachAttempt() throws Exception {
+        final String attemptMetric = PluginMetrics.KEYCLOAK_INTROSPECT + PluginMetrics.ATTEMPT_SUFFIX;
+        final long attempts = PluginMetrics.instance().histogram(attemptMetric).count();
+        final long failedAttempts = PluginMetrics.instance().count(attemptMetric + PluginMetrics.ERRORS_SUFFIX);
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": false}"));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        assertThat(KeycloakApiClient.introspectToken("access-token"), is(false));
+
+        assertThat(server.getRequestCount(), is(2));
+        assertThat(PluginMetrics.instance().histogram(attemptMetric).count(), is(attempts + 2));
+        assertThat(PluginMetrics.instance().count(attemptMetric + PluginMetrics.ERRORS_SUFFIX), is(failedAttempts + 1));
+    }
+
+    @Test
+    public void shouldNotRetryAuthorizationCodeExchange() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("access-token", 3600, "bearer", "refresh-token").toJSON()));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        thrown.expect(RuntimeException.class);
+        thrown.expectMessage("Api call to `/auth/realms/master/protocol/openid-connect/token` failed");
+
+        try {
+            KeycloakApiClient.fetchAccessToken(Collections.singletonMap("code", "some-code"));
+        } finally {
+            assertThat(server.getRequestCount(), is(1));
+        }
+    }
+
+    @Test
+    public void shouldHedgeReadOnlyCallToSecondNodeWhenFirstIsSlow() throws Exception {
+        final MockWebServer secondNode = new MockWebServer();
+        secondNode.start();
+        try {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": false}").setHeadersDelay(5, TimeUnit.SECONDS));
+            secondNode.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": true}"));
+
+            when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+            when(KeycloakConfiguration.keycloakEndpoints()).thenReturn(Arrays.asList(server.url("/").toString(), secondNode.url("/").toString()));
+
+            final long startedAt = System.nanoTime();
+            assertThat(KeycloakApiClient.introspectToken("access-token"), is(true));
+
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), lessThan(2000L));
+            assertEquals("POST /auth/realms/master/protocol/openid-connect/token/introspect HTTP/1.1", server.takeRequest().getRequestLine());
+            assertEquals("POST /auth/realms/master/protocol/openid-connect/token/introspect HTTP/1.1", secondNode.takeRequest().getRequestLine());
+        } finally {
+            secondNode.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReleaseHalfOpenProbeWhenHedgedCallIsCancelled() throws Exception {
+        final MockWebServer secondNode = new MockWebServer();
+        secondNode.start();
+        try {
+            final KeycloakCircuitBreakers circuitBreakers = new KeycloakCircuitBreakers(2, 100);
+            final CircuitBreaker circuitBreaker = circuitBreakers.breakerFor(server.url("/"));
+            circuitBreaker.onFailure();
+            circuitBreaker.onFailure();
+            Thread.sleep(150);
+
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": false}").setHeadersDelay(5, TimeUnit.SECONDS));
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": true}"));
+            secondNode.enqueue(new MockResponse().setResponseCode(200).setBody("{\"active\": true}"));
+
+            when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+            when(KeycloakConfiguration.keycloakEndpoints()).thenReturn(Arrays.asList(server.url("/").toString(), secondNode.url("/").toString()));
+            final KeycloakApiClient apiClient = new KeycloakApiClient(KeycloakConfiguration, KeycloakHttpClients.instance().clientFor(KeycloakConfiguration),
+                    new OidcDiscovery(false, Runnable::run, System::currentTimeMillis), tokenRefresher, circuitBreakers);
+
+            assertThat(apiClient.introspectToken("access-token"), is(true));
+            for (int i = 0; i < 100 && !circuitBreaker.isAvailable(); i++) {
+                Thread.sleep(20);
+            }
+
+            assertThat(circuitBreaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+            assertThat(circuitBreaker.isAvailable(), is(true));
+            assertThat(apiClient.introspectToken("access-token"), is(true));
+            assertThat(circuitBreaker.state(), is(CircuitBreaker.State.CLOSED));
+        } finally {
+            secondNode.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFetchNewServiceAccountTokenBeforeItExpiresDuringSync() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("first-service-account-token", 1, "bearer", null).toJSON()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("[{\"username\": \"bob\"}]"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("second-service-account-token", 300, "bearer", null).toJSON()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("[]"));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final KeycloakUserDirectory.PageFetcher pages = KeycloakApiClient.userPages();
+        pages.fetch(0, 1);
+        Thread.sleep(600);
+        pages.fetch(1, 1);
+
+        assertThat(server.getRequestCount(), is(4));
+        server.takeRequest();
+        assertEquals("Bearer first-service-account-token", server.takeRequest().getHeader("Authorization"));
+        server.takeRequest();
+        assertEquals("Bearer second-service-account-token", server.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void shouldFetchUserPagesWithServiceAccountToken() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new TokenInfo("service-account-token", 300, "bearer", null).toJSON()));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("[{\"username\": \"bob\", \"email\": \"bob@example.com\", \"firstName\": \"Bob\"}]"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("[]"));
+
+        when(KeycloakConfiguration.keycloakEndpoint()).thenReturn(server.url("/").toString());
+
+        final KeycloakUserDirectory.PageFetcher pages = KeycloakApiClient.userPages();
+        final List<KeycloakAdminUser> users = pages.fetch(0, 1);
+        pages.fetch(1, 1);
+
+        assertThat(users.get(0).toUser().displayName(), is("Bob"));
+        assertThat(server.getRequestCount(), is(3));
+        assertThat(server.takeRequest().getBody().readUtf8(), is("client_id=client-id&client_secret=client-secret&grant_type=client_credentials"));
+        final RecordedRequest firstPage = server.takeRequest();
+        assertEquals("GET /auth/admin/realms/master/users?briefRepresentation=true&first=0&max=1 HTTP/1.1", firstPage.getRequestLine());
+        assertEquals("Bearer service-account-token", firstPage.getHeader("Authorization"));
+        assertEquals("GET /auth/admin/realms/master/users?briefRepresentation=true&first=1&max=1 HTTP/1.1", server.takeRequest().getRequestLine());
+    }
 }
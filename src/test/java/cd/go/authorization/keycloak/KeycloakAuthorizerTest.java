@@ -16,11 +16,12 @@
 
 package cd.go.authorization.keycloak;
 
-import cd.go.authorization.keycloak.models.*;
-import cd.go.authorization.keycloak.KeycloakUser;
+import cd.go.authorization.keycloak.models.AuthConfig;
+import cd.go.authorization.keycloak.models.Role;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -34,16 +35,17 @@ public class KeycloakAuthorizerTest {
 
     private KeycloakAuthorizer authorizer;
     private KeycloakUser loggedInUser;
-    private MembershipChecker membershipChecker;
     private AuthConfig authConfig;
 
     @Before
     public void setUp() throws Exception {
-        membershipChecker = mock(MembershipChecker.class);
         loggedInUser = mock(KeycloakUser.class);
         authConfig = mock(AuthConfig.class);
 
-        authorizer = new KeycloakAuthorizer(membershipChecker);
+        when(loggedInUser.getEmail()).thenReturn("Foo@Example.com");
+        when(loggedInUser.groups()).thenReturn(Arrays.asList("developers", "group-1"));
+
+        authorizer = new KeycloakAuthorizer();
     }
 
     @Test
@@ -52,20 +54,11 @@ public class KeycloakAuthorizerTest {
 
         assertThat(assignedRoles, hasSize(0));
         verifyZeroInteractions(authConfig);
-        verifyZeroInteractions(membershipChecker);
     }
 
     @Test
     public void shouldAssignRoleIfUserIsAMemberOfAtLeastOneGroup() throws Exception {
-        final Role role = mock(Role.class);
-        final KeycloakRoleConfiguration roleConfiguration = mock(KeycloakRoleConfiguration.class);
-
-        when(role.name()).thenReturn("admin");
-        when(role.roleConfiguration()).thenReturn(roleConfiguration);
-        when(roleConfiguration.groups()).thenReturn(singletonList("group-1"));
-        when(membershipChecker.isAMemberOfAtLeastOneGroup(loggedInUser, authConfig, roleConfiguration.groups())).thenReturn(true);
-
-        final List<String> assignedRoles = authorizer.authorize(loggedInUser, authConfig, singletonList(role));
+        final List<String> assignedRoles = authorizer.authorize(loggedInUser, authConfig, singletonList(role("admin", "group-1, group-2", null)));
 
         assertThat(assignedRoles, hasSize(1));
         assertThat(assignedRoles, contains("admin"));
@@ -73,16 +66,40 @@ public class KeycloakAuthorizerTest {
 
     @Test
     public void shouldNotAssignRoleIfUserIsNotMemberOfAnyGroup() throws Exception {
-        final Role role = mock(Role.class);
-        final KeycloakRoleConfiguration roleConfiguration = mock(KeycloakRoleConfiguration.class);
+        final List<String> assignedRoles = authorizer.authorize(loggedInUser, authConfig, singletonList(role("admin", "group-2", null)));
 
-        when(role.name()).thenReturn("admin");
-        when(role.roleConfiguration()).thenReturn(roleConfiguration);
-        when(roleConfiguration.groups()).thenReturn(singletonList("group-1"));
-        when(membershipChecker.isAMemberOfAtLeastOneGroup(loggedInUser, authConfig, roleConfiguration.groups())).thenReturn(false);
+        assertThat(assignedRoles, hasSize(0));
+    }
 
-        final List<String> assignedRoles = authorizer.authorize(loggedInUser, authConfig, singletonList(role));
+    @Test
+    public void shouldAssignRoleIfUserBelongsToAllowedUsersList() throws Exception {
+        final List<String> assignedRoles = authorizer.authorize(loggedInUser, authConfig, singletonList(role("admin", null, "bar@example.com, FOO@example.com")));
 
-        assertThat(assignedRoles, hasSize(0));
+        assertThat(assignedRoles, contains("admin"));
+    }
+
+    @Test
+    public void shouldAssignRolesInConfiguredOrderWithoutDuplicates() throws Exception {
+        final List<Role> roles = Arrays.asList(
+                role("viewer", "developers", null),
+                role("operator", "operators", null),
+                role("admin", "group-1", "foo@example.com"));
+
+        final List<String> assignedRoles = authorizer.authorize(loggedInUser, authConfig, roles);
+
+        assertThat(assignedRoles, contains("viewer", "admin"));
+    }
+
+    private Role role(String name, String groups, String users) {
+        final StringBuilder configuration = new StringBuilder("{");
+        if (groups != null) {
+            configuration.append("\"Groups\": \"").append(groups).append("\"");
+        }
+        if (users != null) {
+            configuration.append(groups != null ? ", " : "").append("\"Users\": \"").append(users).append("\"");
+        }
+        configuration.append("}");
+
+        return Role.fromJSON("{\"name\": \"" + name + "\", \"auth_config_id\": \"keycloak\", \"configuration\": " + configuration + "}");
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakDiskCacheTest {
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private Path file;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        file = temporaryFolder.getRoot().toPath().resolve("cache").resolve(KeycloakDiskCache.FILE_NAME);
+    }
+
+    @Test
+    public void shouldReadEntriesBackAfterRestart() throws Exception {
+        final KeycloakDiskCache diskCache = open();
+        diskCache.put(KeycloakDiskCache.Kind.DISCOVERY, "https://example.com|master", "{\"issuer\": \"é\"}", clock.get() + 1000);
+        diskCache.put(KeycloakDiskCache.Kind.JWKS, "https://example.com|master", "{\"keys\": []}", clock.get() + 1000);
+
+        final KeycloakDiskCache restarted = open();
+
+        assertThat(restarted.get(KeycloakDiskCache.Kind.DISCOVERY, "https://example.com|master"), is("{\"issuer\": \"é\"}"));
+        assertThat(restarted.get(KeycloakDiskCache.Kind.JWKS, "https://example.com|master"), is("{\"keys\": []}"));
+        assertThat(restarted.size(), is(2));
+    }
+
+    @Test
+    public void shouldKeepLatestValueOfAKey() throws Exception {
+        final KeycloakDiskCache diskCache = open();
+        diskCache.put(KeycloakDiskCache.Kind.PROFILE, "key", "first", clock.get() + 1000);
+        diskCache.put(KeycloakDiskCache.Kind.PROFILE, "key", "second", clock.get() + 1000);
+
+        assertThat(open().get(KeycloakDiskCache.Kind.PROFILE, "key"), is("second"));
+    }
+
+    @Test
+    public void shouldNotReturnExpiredEntries() throws Exception {
+        final KeycloakDiskCache diskCache = open();
+        diskCache.put(KeycloakDiskCache.Kind.PROFILE, "key", "value", clock.get() + 1000);
+
+        clock.addAndGet(1000);
+
+        assertThat(diskCache.get(KeycloakDiskCache.Kind.PROFILE, "key"), is(nullValue()));
+        assertThat(open().size(), is(0));
+    }
+
+    @Test
+    public void shouldDropPartiallyWrittenRecordAndKeepAppending() throws Exception {
+        open().put(KeycloakDiskCache.Kind.PROFILE, "complete", "value", clock.get() + 1000);
+        final long length = Files.size(file);
+        open().put(KeycloakDiskCache.Kind.PROFILE, "partial", "value", clock.get() + 1000);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        final KeycloakDiskCache restarted = open();
+        assertThat(Files.size(file), is(length));
+        assertThat(restarted.get(KeycloakDiskCache.Kind.PROFILE, "partial"), is(nullValue()));
+
+        restarted.put(KeycloakDiskCache.Kind.PROFILE, "next", "value", clock.get() + 1000);
+        assertThat(open().get(KeycloakDiskCache.Kind.PROFILE, "complete"), is("value"));
+        assertThat(open().get(KeycloakDiskCache.Kind.PROFILE, "next"), is("value"));
+    }
+
+    @Test
+    public void shouldReplaceFileThatIsNotACacheFile() throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, "not a cache".getBytes());
+
+        final KeycloakDiskCache diskCache = open();
+        diskCache.put(KeycloakDiskCache.Kind.PROFILE, "key", "value", clock.get() + 1000);
+
+        assertThat(open().get(KeycloakDiskCache.Kind.PROFILE, "key"), is("value"));
+    }
+
+    @Test
+    public void shouldCompactLogOnceItOutgrowsLiveEntries() throws Exception {
+        final KeycloakDiskCache diskCache = open();
+        for (int i = 0; i < 200; i++) {
+            diskCache.put(KeycloakDiskCache.Kind.PROFILE, "key", "value-" + i, clock.get() + 1000);
+        }
+
+        assertThat(Files.size(file), lessThan(100L * 40));
+        assertThat(open().get(KeycloakDiskCache.Kind.PROFILE, "key"), is("value-199"));
+    }
+
+    @Test
+    public void shouldSweepExpiredEntriesOfChurningKeys() throws Exception {
+        final KeycloakDiskCache diskCache = open();
+        for (int i = 0; i < 1000; i++) {
+            diskCache.put(KeycloakDiskCache.Kind.PROFILE, "token-" + i, "value", clock.get() + 1000);
+            clock.addAndGet(100);
+        }
+
+        assertThat(diskCache.size(), lessThan(100));
+        assertThat(Files.size(file), lessThan(200L * 40));
+        assertThat(open().size(), is(9));
+    }
+
+    @Test
+    public void shouldDropEntriesClosestToExpiryOnceFull() throws Exception {
+        final KeycloakDiskCache diskCache = new KeycloakDiskCache(file, Runnable::run, clock::get, 100);
+        for (int i = 0; i < 150; i++) {
+            diskCache.put(KeycloakDiskCache.Kind.PROFILE, "token-" + i, "value", clock.get() + 1000 + i);
+        }
+
+        assertThat(diskCache.size(), lessThanOrEqualTo(100));
+        assertThat(diskCache.get(KeycloakDiskCache.Kind.PROFILE, "token-0"), is(nullValue()));
+        assertThat(diskCache.get(KeycloakDiskCache.Kind.PROFILE, "token-149"), is("value"));
+    }
+
+    @Test
+    public void shouldStoreNothingWhenDisabled() {
+        final KeycloakDiskCache diskCache = KeycloakDiskCache.disabled();
+        diskCache.put(KeycloakDiskCache.Kind.PROFILE, "key", "value", Long.MAX_VALUE);
+
+        assertThat(diskCache.enabled(), is(false));
+        assertThat(diskCache.get(KeycloakDiskCache.Kind.PROFILE, "key"), is(nullValue()));
+    }
+
+    private KeycloakDiskCache open() {
+        return new KeycloakDiskCache(file, Runnable::run, clock::get);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakEndpointsTest {
+
+    @Test
+    public void shouldBuildLegacyEndpoints() {
+        final KeycloakEndpoints endpoints = KeycloakEndpoints.legacy("https://example.com", "master");
+
+        assertThat(endpoints.issuer(), is("https://example.com/auth/realms/master"));
+        assertThat(endpoints.authorization().toString(), is("https://example.com/auth/realms/master/protocol/openid-connect/auth"));
+        assertThat(endpoints.token().toString(), is("https://example.com/auth/realms/master/protocol/openid-connect/token"));
+        assertThat(endpoints.introspection().toString(), is("https://example.com/auth/realms/master/protocol/openid-connect/token/introspect"));
+        assertThat(endpoints.userinfo().toString(), is("https://example.com/auth/realms/master/protocol/openid-connect/userinfo"));
+        assertThat(endpoints.jwks().toString(), is("https://example.com/auth/realms/master/protocol/openid-connect/certs"));
+        assertThat(endpoints.users().toString(), is("https://example.com/auth/admin/realms/master/users"));
+    }
+
+    @Test
+    public void shouldReadEndpointsFromDiscoveryDocument() {
+        final KeycloakEndpoints endpoints = KeycloakEndpoints.fromDiscoveryDocument("{\n" +
+                "  \"issuer\": \"https://sso.example.com/realms/gocd\",\n" +
+                "  \"authorization_endpoint\": \"https://login.example.com/realms/gocd/protocol/openid-connect/auth\",\n" +
+                "  \"token_endpoint\": \"https://sso.example.com/realms/gocd/protocol/openid-connect/token\",\n" +
+                "  \"userinfo_endpoint\": \"https://sso.example.com/realms/gocd/protocol/openid-connect/userinfo\",\n" +
+                "  \"jwks_uri\": \"https://sso.example.com/realms/gocd/protocol/openid-connect/certs\"\n" +
+                "}");
+
+        assertThat(endpoints.issuer(), is("https://sso.example.com/realms/gocd"));
+        assertThat(endpoints.authorization().toString(), is("https://login.example.com/realms/gocd/protocol/openid-connect/auth"));
+        assertThat(endpoints.token().toString(), is("https://sso.example.com/realms/gocd/protocol/openid-connect/token"));
+        assertThat(endpoints.introspection().toString(), is("https://sso.example.com/realms/gocd/protocol/openid-connect/token/introspect"));
+        assertThat(endpoints.userinfo().toString(), is("https://sso.example.com/realms/gocd/protocol/openid-connect/userinfo"));
+        assertThat(endpoints.jwks().toString(), is("https://sso.example.com/realms/gocd/protocol/openid-connect/certs"));
+        assertThat(endpoints.users().toString(), is("https://sso.example.com/admin/realms/gocd/users"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectDiscoveryDocumentWithoutIssuer() {
+        KeycloakEndpoints.fromDiscoveryDocument("{\"token_endpoint\": \"https://sso.example.com/token\"}");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import okhttp3.OkHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakHttpClientsTest {
+    private KeycloakHttpClients httpClients;
+
+    @Before
+    public void setUp() throws Exception {
+        httpClients = new KeycloakHttpClients();
+    }
+
+    @Test
+    public void shouldReuseClientForSameEndpointRealmAndClientId() throws Exception {
+        final OkHttpClient first = httpClients.clientFor(configuration("https://example.com", "master", "client-id"));
+        final OkHttpClient second = httpClients.clientFor(configuration("https://example.com", "master", "client-id"));
+
+        assertThat(first, sameInstance(second));
+        assertThat(httpClients.size(), is(1));
+    }
+
+    @Test
+    public void shouldShareConnectionPoolAndDispatcherAcrossClients() throws Exception {
+        final OkHttpClient master = httpClients.clientFor(configuration("https://example.com", "master", "client-id"));
+        final OkHttpClient other = httpClients.clientFor(configuration("https://example.com", "other", "client-id"));
+
+        assertThat(master, not(sameInstance(other)));
+        assertThat(master.connectionPool(), sameInstance(other.connectionPool()));
+        assertThat(master.dispatcher(), sameInstance(other.dispatcher()));
+        assertThat(master.connectionPool(), sameInstance(httpClients.connectionPool()));
+    }
+
+    private KeycloakConfiguration configuration(String endpoint, String realm, String clientId) {
+        return KeycloakConfiguration.fromJSON("{\"KeycloakEndpoint\":\"" + endpoint + "\",\"KeycloakRealm\":\"" + realm + "\",\"ClientId\":\"" + clientId + "\",\"ClientSecret\":\"secret\"}");
+    }
+}
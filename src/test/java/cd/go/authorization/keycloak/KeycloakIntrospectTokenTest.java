@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakIntrospectTokenTest {
+
+    @Test
+    public void shouldReadActiveTokenWithAudienceList() throws Exception {
+        final KeycloakIntrospectToken token = KeycloakIntrospectToken.fromJSON(new StringReader("{\n" +
+                "  \"exp\": 1520793947,\n" +
+                "  \"aud\": [\"gocd\", \"account\"],\n" +
+                "  \"realm_access\": {\"roles\": [\"offline_access\"]},\n" +
+                "  \"active\": true\n" +
+                "}"));
+
+        assertThat(token.getActive(), is(true));
+        assertThat(token.getExp(), is(BigInteger.valueOf(1520793947)));
+        assertThat(token.getAudience(), is("gocd"));
+    }
+
+    @Test
+    public void shouldReadInactiveToken() throws Exception {
+        final KeycloakIntrospectToken token = KeycloakIntrospectToken.fromJSON("{\"active\": false}");
+
+        assertThat(token.getActive(), is(false));
+        assertThat(token.getExp(), is(nullValue()));
+    }
+}
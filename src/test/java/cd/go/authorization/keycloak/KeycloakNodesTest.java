@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakNodesTest {
+    private final KeycloakNodes nodes = new KeycloakNodes(Arrays.asList("https://kc1.example.com", "https://kc2.example.com:8443"));
+
+    @Test
+    public void shouldPreferConfiguredOrderUntilLatenciesAreKnown() {
+        assertThat(nodes.select(2, node -> true).toString(), is("[https://kc1.example.com:443, https://kc2.example.com:8443]"));
+    }
+
+    @Test
+    public void shouldPreferFasterNode() {
+        final List<KeycloakNodes.Node> initial = nodes.select(2, node -> true);
+        nodes.recordSuccess(initial.get(0), TimeUnit.MILLISECONDS.toNanos(80));
+        nodes.recordSuccess(initial.get(1), TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertThat(nodes.select(1, node -> true).get(0), is(initial.get(1)));
+    }
+
+    @Test
+    public void shouldAvoidFailingNode() {
+        final List<KeycloakNodes.Node> initial = nodes.select(2, node -> true);
+        nodes.recordSuccess(initial.get(0), TimeUnit.MILLISECONDS.toNanos(10));
+        nodes.recordSuccess(initial.get(1), TimeUnit.MILLISECONDS.toNanos(50));
+        nodes.recordFailure(initial.get(0), TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertThat(nodes.select(1, node -> true).get(0), is(initial.get(1)));
+    }
+
+    @Test
+    public void shouldSelectUnavailableNodesLast() {
+        final KeycloakNodes.Node first = nodes.select(1, node -> true).get(0);
+
+        assertThat(nodes.select(2, node -> node != first).get(1), is(first));
+    }
+
+    @Test
+    public void shouldHedgeAfterP95Latency() {
+        assertThat(nodes.hedgeDelayMillis(), is(KeycloakNodes.DEFAULT_HEDGE_DELAY_MILLIS));
+
+        final KeycloakNodes.Node node = nodes.select(1, n -> true).get(0);
+        for (int i = 1; i <= 96; i++) {
+            nodes.recordSuccess(node, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(nodes.hedgeDelayMillis(), is(92L));
+    }
+
+    @Test
+    public void shouldRebaseUrlOntoNode() {
+        final KeycloakNodes.Node second = nodes.select(2, node -> true).get(1);
+
+        final HttpUrl url = second.rebase(HttpUrl.get("https://kc1.example.com/auth/realms/master/protocol/openid-connect/userinfo"));
+
+        assertThat(url.toString(), is("https://kc2.example.com:8443/auth/realms/master/protocol/openid-connect/userinfo"));
+        assertThat(nodes.nodeFor(url), is(second));
+        assertThat(nodes.nodeFor(HttpUrl.get("https://sso.example.com/")), is(nullValue()));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakUserDirectoryTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Integer> requestedPages = new ArrayList<>();
+    private List<KeycloakAdminUser> users;
+    private KeycloakUserDirectory directory;
+
+    @Before
+    public void setUp() throws Exception {
+        users = new ArrayList<>(Arrays.asList(
+                new KeycloakAdminUser("bob", "Bob@example.com", "Bob", "Builder"),
+                new KeycloakAdminUser("alice", "alice@example.com", "Alice", "Smith"),
+                new KeycloakAdminUser("bobby", "bobby@example.com", null, null),
+                new KeycloakAdminUser("no-email", null, "No", "Email")));
+        directory = new KeycloakUserDirectory(Runnable::run, clock::get, 2);
+    }
+
+    @Test
+    public void shouldFetchAllPagesOnFirstSearch() throws Exception {
+        directory.search("bo", 10, this::fetch);
+
+        assertThat(requestedPages, contains(0, 2, 4));
+        assertThat(directory.size(), is(3));
+    }
+
+    @Test
+    public void shouldMatchPrefixOfUsernameEmailAndDisplayName() throws Exception {
+        assertThat(directory.search("bob", 10, this::fetch), containsInAnyOrder(
+                new User("Bob@example.com", "Bob Builder", "bob@example.com"),
+                new User("bobby@example.com", "bobby", "bobby@example.com")));
+        assertThat(directory.search("SMI", 10, this::fetch), contains(new User("alice@example.com", "Alice Smith", "alice@example.com")));
+        assertThat(directory.search("alice smith", 10, this::fetch), contains(new User("alice@example.com", "Alice Smith", "alice@example.com")));
+        assertThat(directory.search("bob", 1, this::fetch).size(), is(1));
+        assertThat(directory.search("  ", 10, this::fetch), empty());
+        assertThat(directory.search("no-email", 10, this::fetch), empty());
+    }
+
+    @Test
+    public void shouldAnswerFromMemoryUntilSyncIntervalPasses() throws Exception {
+        directory.search("alice", 10, this::fetch);
+        users.add(new KeycloakAdminUser("carol", "carol@example.com", "Carol", "King"));
+
+        assertThat(directory.search("carol", 10, this::fetch), empty());
+        assertThat(requestedPages.size(), is(3));
+
+        clock.addAndGet(KeycloakUserDirectory.SYNC_INTERVAL_MILLIS);
+
+        assertThat(directory.search("carol", 10, this::fetch), empty());
+        assertThat(directory.search("carol", 10, this::fetch), contains(new User("carol@example.com", "Carol King", "carol@example.com")));
+    }
+
+    @Test
+    public void shouldKeepPreviousCopyWhenBackgroundSyncFails() throws Exception {
+        directory.search("alice", 10, this::fetch);
+        clock.addAndGet(KeycloakUserDirectory.SYNC_INTERVAL_MILLIS);
+
+        final KeycloakUserDirectory.PageFetcher failing = (first, max) -> {
+            throw new IOException("boom");
+        };
+
+        directory.search("alice", 10, failing);
+
+        assertThat(directory.search("alice", 10, failing), contains(new User("alice@example.com", "Alice Smith", "alice@example.com")));
+    }
+
+    private List<KeycloakAdminUser> fetch(int first, int max) {
+        requestedPages.add(first);
+        return new ArrayList<>(users.subList(Math.min(first, users.size()), Math.min(first + max, users.size())));
+    }
+}
@@ -17,7 +17,11 @@
 package cd.go.authorization.keycloak;
 
 import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.io.StringReader;
+
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -49,4 +53,26 @@ public class KeycloakUserTest {
         assertThat(keycloakUser.getUpdatedAt(), is(1520793947));
         assertThat(keycloakUser.getZoneInfo(), is("America/Los_Angeles"));
     }
+
+    @Test
+    public void shouldReadFromStreamSkippingUnknownClaims() throws Exception {
+        final KeycloakUser keycloakUser = KeycloakUser.fromJSON(new StringReader("{\n" +
+                " \"email\": \"foo@example.com\",\n" +
+                " \"realm_access\": {\"roles\": [\"offline_access\"]},\n" +
+                " \"address\": {},\n" +
+                " \"groups\": [\"developers\", null, \"qa\"],\n" +
+                " \"name\": \"Foo Bar\"\n" +
+                "}"));
+
+        assertThat(keycloakUser.getEmail(), is("foo@example.com"));
+        assertThat(keycloakUser.getName(), is("Foo Bar"));
+        assertThat(keycloakUser.groups(), contains("developers", "qa"));
+    }
+
+    @Test
+    public void shouldSerializeToJSON() throws Exception {
+        final KeycloakUser keycloakUser = KeycloakUser.fromJSON("{\"email\": \"foo@example.com\", \"groups\": [\"developers\"]}");
+
+        JSONAssert.assertEquals("{\"email\": \"foo@example.com\", \"email_verified\": false, \"updated_at\": 0, \"groups\": [\"developers\"]}", keycloakUser.toJSON(), true);
+    }
 }
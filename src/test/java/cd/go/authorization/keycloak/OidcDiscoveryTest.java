@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import okhttp3.HttpUrl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OidcDiscoveryTest {
+    private static final String DOCUMENT = "{\"issuer\": \"https://example.com/realms/master\"}";
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final List<String> fetched = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldDiscoverEndpointsOnlyOnce() throws Exception {
+        final OidcDiscovery discovery = new OidcDiscovery(true, Runnable::run, clock::get);
+
+        discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+        final KeycloakEndpoints endpoints = discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.token().toString(), is("https://example.com/realms/master/protocol/openid-connect/token"));
+        assertThat(fetched, contains("https://example.com/auth/realms/master/.well-known/openid-configuration"));
+    }
+
+    @Test
+    public void shouldServeStoredDocumentAfterRestartAndRevalidateIt() throws Exception {
+        final KeycloakDiskCache diskCache = new KeycloakDiskCache(temporaryFolder.getRoot().toPath().resolve(KeycloakDiskCache.FILE_NAME), Runnable::run, clock::get);
+        new OidcDiscovery(true, Runnable::run, clock::get, diskCache).endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        final KeycloakDiskCache reloaded = new KeycloakDiskCache(temporaryFolder.getRoot().toPath().resolve(KeycloakDiskCache.FILE_NAME), Runnable::run, clock::get);
+        final OidcDiscovery restarted = new OidcDiscovery(true, scheduled::add, clock::get, reloaded);
+        final KeycloakEndpoints endpoints = restarted.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.token().toString(), is("https://example.com/realms/master/protocol/openid-connect/token"));
+        assertThat(fetched, hasSize(1));
+        assertThat(scheduled, hasSize(1));
+    }
+
+    @Test
+    public void shouldRefreshStaleEndpointsInBackground() throws Exception {
+        final OidcDiscovery discovery = new OidcDiscovery(true, scheduled::add, clock::get);
+        discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+        assertThat(fetched, hasSize(1));
+
+        clock.addAndGet(OidcDiscovery.REFRESH_INTERVAL_MILLIS);
+        final KeycloakEndpoints endpoints = discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+        discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.issuer(), is("https://example.com/realms/master"));
+        assertThat(fetched, hasSize(1));
+        assertThat(scheduled, hasSize(1));
+
+        scheduled.get(0).run();
+        assertThat(fetched, hasSize(2));
+    }
+
+    @Test
+    public void shouldUseLegacyEndpointsAndRetryLaterWhenDiscoveryFails() throws Exception {
+        final OidcDiscovery discovery = new OidcDiscovery(true, Runnable::run, clock::get);
+
+        final KeycloakEndpoints endpoints = discovery.endpointsFor("https://example.com", "master", fetcher(null));
+        discovery.endpointsFor("https://example.com", "master", fetcher(null));
+
+        assertThat(endpoints.issuer(), is("https://example.com/auth/realms/master"));
+        assertThat(fetched, contains("https://example.com/auth/realms/master/.well-known/openid-configuration",
+                "https://example.com/realms/master/.well-known/openid-configuration"));
+
+        clock.addAndGet(OidcDiscovery.RETRY_DELAY_MILLIS);
+        final KeycloakEndpoints retried = discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(retried.issuer(), is("https://example.com/auth/realms/master"));
+        assertThat(discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT)).issuer(), is("https://example.com/realms/master"));
+    }
+
+    @Test
+    public void shouldWaitForDiscoveryWhenAskedForCurrentEndpointsOnColdStart() {
+        final OidcDiscovery discovery = new OidcDiscovery(true, Runnable::run, clock::get);
+
+        final KeycloakEndpoints endpoints = discovery.currentEndpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.issuer(), is("https://example.com/realms/master"));
+    }
+
+    @Test
+    public void shouldFallBackToLegacyEndpointsWhenDiscoveryTakesTooLong() {
+        final OidcDiscovery discovery = new OidcDiscovery(true, scheduled::add, clock::get, KeycloakDiskCache.disabled(), 10);
+
+        final KeycloakEndpoints endpoints = discovery.currentEndpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.issuer(), is("https://example.com/auth/realms/master"));
+        assertThat(fetched, empty());
+
+        scheduled.get(0).run();
+        assertThat(discovery.currentEndpointsFor("https://example.com", "master", fetcher(DOCUMENT)).issuer(), is("https://example.com/realms/master"));
+    }
+
+    @Test
+    public void shouldRetryFailedDiscoveryWhenAskedForCurrentEndpoints() throws Exception {
+        final OidcDiscovery discovery = new OidcDiscovery(true, Runnable::run, clock::get);
+        discovery.endpointsFor("https://example.com", "master", fetcher(null));
+
+        final KeycloakEndpoints endpoints = discovery.currentEndpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.issuer(), is("https://example.com/realms/master"));
+        assertThat(fetched, hasSize(3));
+    }
+
+    @Test
+    public void shouldNotFetchDiscoveryDocumentWhenDisabled() throws Exception {
+        final OidcDiscovery discovery = new OidcDiscovery(false, Runnable::run, clock::get);
+
+        final KeycloakEndpoints endpoints = discovery.endpointsFor("https://example.com", "master", fetcher(DOCUMENT));
+
+        assertThat(endpoints.issuer(), is("https://example.com/auth/realms/master"));
+        assertThat(fetched, empty());
+    }
+
+    private OidcDiscovery.DocumentFetcher fetcher(String document) {
+        return (HttpUrl url) -> {
+            fetched.add(url.toString());
+            if (document == null) {
+                throw new IOException("Not found");
+            }
+            return document;
+        };
+    }
+}
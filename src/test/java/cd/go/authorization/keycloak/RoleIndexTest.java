@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.Role;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class RoleIndexTest {
+
+    @Test
+    public void shouldReuseIndexForRolesWithSameConfiguration() throws Exception {
+        final RoleIndex index = RoleIndex.of(Arrays.asList(role("admin", "admins"), role("viewer", "developers")));
+
+        assertThat(RoleIndex.of(Arrays.asList(role("admin", "admins"), role("viewer", "developers"))), sameInstance(index));
+        assertThat(RoleIndex.of(Arrays.asList(role("admin", "admins"), role("viewer", "developers, qa"))), not(sameInstance(index)));
+    }
+
+    @Test
+    public void shouldLookupRolesByGroupAndEmail() throws Exception {
+        final RoleIndex index = new RoleIndex(Arrays.asList(
+                Role.fromJSON("{\"name\": \"admin\", \"configuration\": {\"Users\": \"Admin@Example.com\"}}"),
+                role("viewer", "developers, qa"),
+                role("operator", "operators")));
+
+        assertThat(index.rolesFor("admin@example.com", Collections.emptyList()), contains("admin"));
+        assertThat(index.rolesFor("ADMIN@example.com", Collections.singletonList("qa")), contains("admin", "viewer"));
+        assertThat(index.rolesFor("foo@example.com", Arrays.asList("qa", "operators", "developers")), contains("viewer", "operator"));
+    }
+
+    @Test
+    public void shouldAssignNoRolesToUserWithoutEmailOrGroups() throws Exception {
+        final RoleIndex index = new RoleIndex(Collections.singletonList(role("viewer", "developers")));
+
+        final List<String> roles = index.rolesFor(null, null);
+
+        assertThat(roles, empty());
+    }
+
+    @Test
+    public void shouldReuseDecisionForSameEmailAndGroupSet() throws Exception {
+        final RoleIndex index = new RoleIndex(Arrays.asList(role("viewer", "developers, qa"), role("operator", "operators")));
+
+        final List<String> roles = index.rolesFor("Foo@Example.com", Arrays.asList("qa", "operators", "qa"));
+
+        assertThat(index.rolesFor("foo@example.com", Arrays.asList("operators", "qa")), sameInstance(roles));
+        assertThat(index.rolesFor("foo@example.com", Collections.singletonList("qa")), contains("viewer"));
+        assertThat(index.cachedDecisions(), is(2));
+    }
+
+    @Test
+    public void shouldBuildDecisionKeyFromLowercasedEmailAndSortedDistinctGroups() throws Exception {
+        assertThat(RoleIndex.decisionKey("Foo@Example.com", Arrays.asList("qa", null, "dev", "qa")), is("15:foo@example.com3:dev2:qa"));
+        assertThat(RoleIndex.decisionKey(null, null), is("\u0001"));
+    }
+
+    @Test
+    public void shouldNotShareDecisionKeyWhenGroupNamesContainSeparators() throws Exception {
+        assertThat(RoleIndex.decisionKey("foo@example.com", Collections.singletonList("dev\nqa")),
+                not(RoleIndex.decisionKey("foo@example.com", Arrays.asList("dev", "qa"))));
+        assertThat(RoleIndex.decisionKey("foo@example.com\ndev", Collections.emptyList()),
+                not(RoleIndex.decisionKey("foo@example.com", Collections.singletonList("dev"))));
+        assertThat(RoleIndex.decisionKey(null, null), not(RoleIndex.decisionKey("", null)));
+    }
+
+    private Role role(String name, String groups) {
+        return Role.fromJSON("{\"name\": \"" + name + "\", \"configuration\": {\"Groups\": \"" + groups + "\"}}");
+    }
+}
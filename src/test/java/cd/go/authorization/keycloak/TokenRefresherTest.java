@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak;
+
+import cd.go.authorization.keycloak.models.TokenInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TokenRefresherTest {
+    @Mock
+    private ScheduledExecutorService scheduler;
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private TokenRefresher tokenRefresher;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        tokenRefresher = new TokenRefresher(scheduler, clock::get);
+    }
+
+    @Test
+    public void shouldScheduleRefreshShortlyBeforeTokenExpires() {
+        tokenRefresher.track(new TokenInfo("access-token", 300, "bearer", "refresh-token"), this::refresh);
+
+        verify(scheduler).schedule(ArgumentCaptor.forClass(Runnable.class).capture(), eq(270_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldServeRefreshedTokenForOriginalAccessToken() {
+        final TokenInfo issued = new TokenInfo("access-token", 300, "bearer", "refresh-token");
+        tokenRefresher.track(issued, this::refresh);
+
+        clock.addAndGet(270_000);
+        runScheduledRefresh(1);
+
+        assertThat(tokenRefresher.current(issued).accessToken(), is("access-token-1"));
+        assertThat(tokenRefresher.current(issued).refreshToken(), is("refresh-token"));
+        verify(scheduler, times(2)).schedule(ArgumentCaptor.forClass(Runnable.class).capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldNotServeExpiredToken() {
+        final TokenInfo issued = new TokenInfo("access-token", 300, "bearer", "refresh-token");
+        tokenRefresher.track(issued, this::refresh);
+
+        clock.addAndGet(300_000);
+
+        assertThat(tokenRefresher.current(issued), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReportExpiryOfLatestRefreshedToken() {
+        final TokenInfo issued = new TokenInfo("access-token", 300, "bearer", "refresh-token");
+        tokenRefresher.track(issued, this::refresh);
+        assertThat(tokenRefresher.expiresAt(issued), is(1_300_000L));
+
+        clock.addAndGet(270_000);
+        runScheduledRefresh(1);
+
+        assertThat(tokenRefresher.expiresAt(issued), is(1_570_000L));
+        assertThat(tokenRefresher.expiresAt(new TokenInfo("untracked-token", 60, "bearer", null)), is(1_330_000L));
+    }
+
+    @Test
+    public void shouldStopTrackingTokenNobodyAskedForInAWhile() {
+        final TokenInfo issued = new TokenInfo("access-token", 3600, "bearer", "refresh-token");
+        tokenRefresher.track(issued, this::refresh);
+
+        clock.addAndGet(TokenRefresher.IDLE_TIMEOUT_MILLIS + 1);
+        runScheduledRefresh(1);
+
+        assertThat(refreshes.get(), is(0));
+        assertThat(tokenRefresher.size(), is(0));
+    }
+
+    @Test
+    public void shouldStopTrackingTokenWhenRefreshFails() {
+        final TokenInfo issued = new TokenInfo("access-token", 300, "bearer", "refresh-token");
+        tokenRefresher.track(issued, refreshToken -> {
+            throw new RuntimeException("Api call failed with 400");
+        });
+
+        runScheduledRefresh(1);
+
+        assertThat(tokenRefresher.current(issued), is(nullValue()));
+        assertThat(tokenRefresher.size(), is(0));
+    }
+
+    @Test
+    public void shouldNotTrackTokenWithoutRefreshToken() {
+        tokenRefresher.track(new TokenInfo("access-token", 300, "bearer", null), this::refresh);
+
+        assertThat(tokenRefresher.size(), is(0));
+        verify(scheduler, never()).schedule(ArgumentCaptor.forClass(Runnable.class).capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    private void runScheduledRefresh(int times) {
+        final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(times)).schedule(refresh.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        refresh.getValue().run();
+    }
+
+    private TokenInfo refresh(String refreshToken) {
+        return new TokenInfo("access-token-" + refreshes.incrementAndGet(), 300, "bearer", null);
+    }
+}
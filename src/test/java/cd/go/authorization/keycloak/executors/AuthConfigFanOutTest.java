@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.executors;
+
+import cd.go.authorization.keycloak.models.AuthConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuthConfigFanOutTest {
+    private ExecutorService executor;
+    private AuthConfigFanOut fanOut;
+    private AuthConfig first;
+    private AuthConfig second;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        fanOut = new AuthConfigFanOut(executor, 500);
+        first = authConfig("first");
+        second = authConfig("second");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCallSingleAuthConfigOnCallingThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+
+        assertThat(fanOut.call(first, authConfig -> Thread.currentThread()), is(caller));
+        assertThat(fanOut.successful(Collections.singletonList(first), authConfig -> Thread.currentThread()).get(first), is(caller));
+    }
+
+    @Test
+    public void shouldNotRejectBurstOfSingleAuthConfigCalls() throws Exception {
+        final ExecutorService saturated = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        final ExecutorService callers = Executors.newFixedThreadPool(64);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            saturated.submit(() -> {
+                release.await();
+                return null;
+            });
+            final AuthConfigFanOut saturatedFanOut = new AuthConfigFanOut(saturated, 500);
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                results.add(callers.submit(() -> saturatedFanOut.call(first, authConfig -> {
+                    Thread.sleep(5);
+                    return authConfig.getId();
+                })));
+            }
+
+            for (Future<String> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), is("first"));
+            }
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRethrowFailureOfCall() throws Exception {
+        try {
+            fanOut.call(first, authConfig -> {
+                throw new IllegalStateException("Failed for " + authConfig.getId());
+            });
+            fail("Should have thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Failed for first"));
+        }
+    }
+
+    @Test
+    public void shouldReturnResultsOfAuthConfigsWhichSucceedInOrder() throws Exception {
+        final AuthConfig third = authConfig("third");
+
+        final Map<AuthConfig, String> results = fanOut.successful(Arrays.asList(first, second, third), authConfig -> {
+            if (authConfig == second) {
+                throw new RuntimeException("Api call failed with 401");
+            }
+            return authConfig.getId();
+        });
+
+        assertThat(new ArrayList<>(results.values()), contains("first", "third"));
+    }
+
+    @Test
+    public void shouldSkipSlowAuthConfigWithoutHoldingUpOthers() throws Exception {
+        final CountDownLatch neverReleased = new CountDownLatch(1);
+
+        final long startedAt = System.nanoTime();
+        final Map<AuthConfig, String> results = fanOut.successful(Arrays.asList(first, second), authConfig -> {
+            if (authConfig == first) {
+                neverReleased.await();
+            }
+            return authConfig.getId();
+        });
+
+        assertThat(new ArrayList<>(results.values()), contains("second"));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), lessThan(2_000L));
+    }
+
+    @Test
+    public void shouldRunCallWhichCanNotBeQueuedOnCallingThread() throws Exception {
+        final ExecutorService saturated = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            saturated.submit(() -> {
+                release.await();
+                return null;
+            });
+            final AuthConfigFanOut saturatedFanOut = new AuthConfigFanOut(saturated, 500);
+
+            final Map<AuthConfig, String> results = saturatedFanOut.successful(Arrays.asList(first, second), AuthConfig::getId);
+
+            assertThat(new ArrayList<>(results.values()), contains("first", "second"));
+        } finally {
+            release.countDown();
+            saturated.shutdownNow();
+        }
+    }
+
+    private AuthConfig authConfig(String id) {
+        final AuthConfig authConfig = mock(AuthConfig.class);
+        when(authConfig.getId()).thenReturn(id);
+        return authConfig;
+    }
+}
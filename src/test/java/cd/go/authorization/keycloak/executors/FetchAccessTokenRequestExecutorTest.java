@@ -16,7 +16,9 @@
 
 package cd.go.authorization.keycloak.executors;
 
+import cd.go.authorization.keycloak.AuthorizationStates;
 import cd.go.authorization.keycloak.KeycloakApiClient;
+import cd.go.authorization.keycloak.exceptions.InvalidStateException;
 import cd.go.authorization.keycloak.exceptions.NoAuthorizationConfigurationException;
 import cd.go.authorization.keycloak.models.AuthConfig;
 import cd.go.authorization.keycloak.models.KeycloakConfiguration;
@@ -30,10 +32,17 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mock;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -48,6 +57,8 @@ public class FetchAccessTokenRequestExecutorTest {
     private KeycloakConfiguration keycloakConfiguration;
     @Mock
     private KeycloakApiClient keycloakApiClient;
+    @Mock
+    private AuthorizationStates states;
     private FetchAccessTokenRequestExecutor executor;
 
     @Before
@@ -57,7 +68,7 @@ public class FetchAccessTokenRequestExecutorTest {
         when(authConfig.getConfiguration()).thenReturn(keycloakConfiguration);
         when(keycloakConfiguration.keycloakApiClient()).thenReturn(keycloakApiClient);
 
-        executor = new FetchAccessTokenRequestExecutor(request);
+        executor = new FetchAccessTokenRequestExecutor(request, AuthConfigFanOut.instance(), states, true);
     }
 
     @Test
@@ -74,9 +85,15 @@ public class FetchAccessTokenRequestExecutorTest {
     public void shouldFetchAccessToken() throws Exception {
         final TokenInfo tokenInfo = new TokenInfo("31239032-xycs.xddasdasdasda", 7200, "foo-type", "refresh-xysaddasdjlascdas");
 
+        final Map<String, String> params = new HashMap<>();
+        params.put("code", "code-received-in-previous-step");
+        params.put("state", "issued-state");
+        final AuthorizationStates.Issued issued = issued("keycloak");
+        when(states.consume("issued-state")).thenReturn(issued);
+        when(authConfig.getId()).thenReturn("keycloak");
         when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
-        when(request.requestParameters()).thenReturn(Collections.singletonMap("code", "code-received-in-previous-step"));
-        when(keycloakApiClient.fetchAccessToken(request.requestParameters())).thenReturn(tokenInfo);
+        when(request.requestParameters()).thenReturn(params);
+        when(keycloakApiClient.fetchAccessToken(params)).thenReturn(tokenInfo);
 
         final GoPluginApiResponse response = executor.execute();
 
@@ -91,4 +108,95 @@ public class FetchAccessTokenRequestExecutorTest {
         assertThat(response.responseCode(), is(200));
         JSONAssert.assertEquals(expectedJSON, response.responseBody(), true);
     }
+
+    @Test
+    public void shouldRejectUnknownState() throws Exception {
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.requestParameters()).thenReturn(Collections.singletonMap("state", "forged-state"));
+
+        thrown.expect(InvalidStateException.class);
+        thrown.expectMessage("[Get Access Token] Unknown or expired state in authorization callback.");
+
+        executor.execute();
+    }
+
+    @Test
+    public void shouldRejectMissingStateByDefault() throws Exception {
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.requestParameters()).thenReturn(Collections.singletonMap("code", "code-received-in-previous-step"));
+
+        thrown.expect(InvalidStateException.class);
+        thrown.expectMessage("[Get Access Token] Unknown or expired state in authorization callback.");
+
+        new FetchAccessTokenRequestExecutor(request).execute();
+    }
+
+    @Test
+    public void shouldContinueWithFirstAuthConfigOnUnknownStateWhenLenient() throws Exception {
+        final FetchAccessTokenRequestExecutor lenientExecutor = new FetchAccessTokenRequestExecutor(request, AuthConfigFanOut.instance(), states, false);
+        final Map<String, String> params = Collections.singletonMap("code", "code-received-in-previous-step");
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.requestParameters()).thenReturn(params);
+        when(keycloakApiClient.fetchAccessToken(params)).thenReturn(new TokenInfo("access-token", 7200, "bearer", "refresh-token"));
+
+        assertThat(lenientExecutor.execute().responseCode(), is(200));
+    }
+
+    @Test
+    public void shouldAcceptIssuedState() throws Exception {
+        final Map<String, String> params = new HashMap<>();
+        params.put("code", "code-received-in-previous-step");
+        params.put("state", "issued-state");
+        final AuthorizationStates.Issued issued = issued("keycloak");
+        when(states.consume("issued-state")).thenReturn(issued);
+        when(authConfig.getId()).thenReturn("keycloak");
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.requestParameters()).thenReturn(params);
+        when(keycloakApiClient.fetchAccessToken(params)).thenReturn(new TokenInfo("access-token", 7200, "bearer", "refresh-token"));
+
+        assertThat(executor.execute().responseCode(), is(200));
+    }
+
+    @Test
+    public void shouldExchangeCodeOnlyWithAuthConfigWhichIssuedTheState() throws Exception {
+        final AuthConfig otherAuthConfig = mock(AuthConfig.class);
+        final KeycloakConfiguration otherConfiguration = mock(KeycloakConfiguration.class);
+        final KeycloakApiClient otherApiClient = mock(KeycloakApiClient.class);
+        final Map<String, String> params = new HashMap<>();
+        params.put("code", "code-received-in-previous-step");
+        params.put("state", "issued-state");
+
+        when(otherAuthConfig.getId()).thenReturn("other-realm");
+        when(otherAuthConfig.getConfiguration()).thenReturn(otherConfiguration);
+        when(otherConfiguration.keycloakApiClient()).thenReturn(otherApiClient);
+        when(authConfig.getId()).thenReturn("keycloak");
+        final AuthorizationStates.Issued issued = issued("keycloak");
+        when(states.consume("issued-state")).thenReturn(issued);
+        when(request.authConfigs()).thenReturn(Arrays.asList(otherAuthConfig, authConfig));
+        when(request.requestParameters()).thenReturn(params);
+        when(keycloakApiClient.fetchAccessToken(params)).thenReturn(new TokenInfo("access-token", 7200, "bearer", "refresh-token"));
+
+        assertThat(executor.execute().responseCode(), is(200));
+        verify(otherApiClient, never()).fetchAccessToken(any());
+    }
+
+    @Test
+    public void shouldRejectStateOfAuthConfigWhichIsNoLongerConfigured() throws Exception {
+        when(authConfig.getId()).thenReturn("keycloak");
+        final AuthorizationStates.Issued issued = issued("removed-realm");
+        when(states.consume("issued-state")).thenReturn(issued);
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.requestParameters()).thenReturn(Collections.singletonMap("state", "issued-state"));
+
+        thrown.expect(InvalidStateException.class);
+        thrown.expectMessage("Auth config `removed-realm` of the authorization callback is no longer configured.");
+
+        executor.execute();
+    }
+
+    private AuthorizationStates.Issued issued(String authConfigId) {
+        final AuthorizationStates.Issued issued = mock(AuthorizationStates.Issued.class);
+        when(issued.authConfigId()).thenReturn(authConfigId);
+        return issued;
+    }
 }
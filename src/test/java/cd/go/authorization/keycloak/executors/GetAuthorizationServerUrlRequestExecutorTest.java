@@ -70,10 +70,11 @@ public class GetAuthorizationServerUrlRequestExecutorTest {
 
     @Test
     public void shouldReturnAuthorizationServerUrl() throws Exception {
+        when(authConfig.getId()).thenReturn("keycloak");
         when(authConfig.getConfiguration()).thenReturn(keycloakConfiguration);
         when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
         when(keycloakConfiguration.keycloakApiClient()).thenReturn(keycloakApiClient);
-        when(keycloakApiClient.authorizationServerUrl(request.callbackUrl())).thenReturn("https://authorization-server-url");
+        when(keycloakApiClient.authorizationServerUrl(request.callbackUrl(), "keycloak")).thenReturn("https://authorization-server-url");
 
         final GoPluginApiResponse response = executor.execute();
 
@@ -25,6 +25,7 @@ import java.util.HashMap;
 
 import static java.util.Base64.getDecoder;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class GetPluginIconRequestExecutorTest {
@@ -37,4 +38,11 @@ public class GetPluginIconRequestExecutorTest {
         assertThat(hashMap.get("content_type"), is("image/png"));
         assertThat(Util.readResourceBytes("/keycloak.png"), is(getDecoder().decode(hashMap.get("data"))));
     }
+
+    @Test
+    public void shouldServePrebuiltResponseBody() throws Exception {
+        final GetPluginIconRequestExecutor executor = new GetPluginIconRequestExecutor();
+
+        assertThat(executor.execute().responseBody(), sameInstance(executor.execute().responseBody()));
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.executors;
+
+import cd.go.authorization.keycloak.exceptions.NoSuchRequestHandlerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RequestFromServerTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void shouldResolveEveryRequestByName() throws Exception {
+        for (RequestFromServer requestFromServer : RequestFromServer.values()) {
+            assertThat(RequestFromServer.fromString(requestFromServer.requestName()), is(requestFromServer));
+        }
+    }
+
+    @Test
+    public void shouldResolveRequestNameIgnoringCase() throws Exception {
+        assertThat(RequestFromServer.fromString("GO.CD.AUTHORIZATION.AUTHENTICATE-USER"), is(RequestFromServer.REQUEST_AUTHENTICATE_USER));
+    }
+
+    @Test
+    public void shouldErrorOutForUnknownRequest() throws Exception {
+        thrown.expect(NoSuchRequestHandlerException.class);
+        thrown.expectMessage("Request go.cd.authorization.unknown is not supported by plugin.");
+
+        RequestFromServer.fromString("go.cd.authorization.unknown");
+    }
+
+    @Test
+    public void shouldErrorOutForMissingRequestName() throws Exception {
+        thrown.expect(NoSuchRequestHandlerException.class);
+
+        RequestFromServer.fromString(null);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.executors;
+
+import cd.go.authorization.keycloak.KeycloakApiClient;
+import cd.go.authorization.keycloak.KeycloakUserDirectory;
+import cd.go.authorization.keycloak.models.AuthConfig;
+import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import cd.go.authorization.keycloak.models.User;
+import cd.go.authorization.keycloak.requests.SearchUsersRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SearchUsersRequestExecutorTest {
+    @Mock
+    private SearchUsersRequest request;
+    @Mock
+    private KeycloakUserDirectory directory;
+    @Mock
+    private KeycloakUserDirectory otherDirectory;
+    private SearchUsersRequestExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        executor = new SearchUsersRequestExecutor(request) {
+            @Override
+            KeycloakUserDirectory directoryFor(KeycloakConfiguration configuration) {
+                return "https://failing.example.com".equals(configuration.keycloakEndpoint()) ? otherDirectory : directory;
+            }
+        };
+    }
+
+    @Test
+    public void shouldReturnEmptyListWhenNoAuthConfigIsProvided() throws Exception {
+        when(request.authConfigs()).thenReturn(Collections.emptyList());
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[]", response.responseBody(), true);
+    }
+
+    @Test
+    public void shouldSearchUsersAcrossAuthConfigsAndSkipFailingOnes() throws Exception {
+        final AuthConfig failing = authConfig("https://failing.example.com");
+        final AuthConfig working = authConfig("https://example.com");
+        when(request.authConfigs()).thenReturn(Arrays.asList(failing, working));
+        when(request.searchTerm()).thenReturn("bob");
+        when(otherDirectory.search(eq("bob"), anyInt(), any())).thenThrow(new IOException("Keycloak is down"));
+        when(directory.search(eq("bob"), eq(SearchUsersRequestExecutor.MAXIMUM_RESULTS), any()))
+                .thenReturn(Collections.singletonList(new User("bob@example.com", "Bob Builder", "bob@example.com")));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[{\"username\": \"bob@example.com\", \"display_name\": \"Bob Builder\", \"email\": \"bob@example.com\"}]", response.responseBody(), true);
+    }
+
+    private AuthConfig authConfig(String endpoint) {
+        final AuthConfig authConfig = mock(AuthConfig.class);
+        final KeycloakConfiguration configuration = mock(KeycloakConfiguration.class);
+        when(authConfig.getConfiguration()).thenReturn(configuration);
+        when(configuration.keycloakEndpoint()).thenReturn(endpoint);
+        when(configuration.keycloakApiClient()).thenReturn(mock(KeycloakApiClient.class));
+        return authConfig;
+    }
+}
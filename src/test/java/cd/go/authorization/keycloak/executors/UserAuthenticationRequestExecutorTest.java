@@ -18,9 +18,11 @@ package cd.go.authorization.keycloak.executors;
 
 import cd.go.authorization.keycloak.KeycloakApiClient;
 import cd.go.authorization.keycloak.KeycloakUser;
+import cd.go.authorization.keycloak.exceptions.InvalidTokenException;
 import cd.go.authorization.keycloak.exceptions.NoAuthorizationConfigurationException;
 import cd.go.authorization.keycloak.models.AuthConfig;
 import cd.go.authorization.keycloak.models.KeycloakConfiguration;
+import cd.go.authorization.keycloak.models.Role;
 import cd.go.authorization.keycloak.models.TokenInfo;
 import cd.go.authorization.keycloak.requests.UserAuthenticationRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
@@ -31,10 +33,18 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mock;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -50,6 +60,8 @@ public class UserAuthenticationRequestExecutorTest {
     private KeycloakConfiguration keycloakConfiguration;
     @Mock
     private KeycloakApiClient keycloakApiClient;
+    @Mock
+    private AuthConfig otherAuthConfig;
     private UserAuthenticationRequestExecutor executor;
 
     @Before
@@ -94,4 +106,134 @@ public class UserAuthenticationRequestExecutorTest {
         assertThat(response.responseCode(), is(200));
         JSONAssert.assertEquals(expectedJSON, response.responseBody(), true);
     }
+
+    @Test
+    public void shouldAuthenticateUsingIdTokenClaimsWhenEnabled() throws Exception {
+        final TokenInfo tokenInfo = new TokenInfo("31239032-xycs.xddasdasdasda", 7200, "foo-type", "refresh-xysaddasdjlascdas", "id-token");
+
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.tokenInfo()).thenReturn(tokenInfo);
+        when(keycloakConfiguration.useIdTokenClaims()).thenReturn(true);
+        when(keycloakApiClient.userProfileFromIdToken(tokenInfo)).thenReturn(new KeycloakUser("foo@bar.com", "Foo Bar"));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("{\"user\": {\"username\": \"foo@bar.com\"}}", response.responseBody(), false);
+        verify(keycloakApiClient, never()).userProfile(tokenInfo);
+    }
+
+    @Test
+    public void shouldFetchUserProfileWhenIdTokenIsNotValid() throws Exception {
+        final TokenInfo tokenInfo = new TokenInfo("31239032-xycs.xddasdasdasda", 7200, "foo-type", "refresh-xysaddasdjlascdas", "id-token");
+
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.tokenInfo()).thenReturn(tokenInfo);
+        when(keycloakConfiguration.useIdTokenClaims()).thenReturn(true);
+        when(keycloakApiClient.userProfileFromIdToken(tokenInfo)).thenThrow(new InvalidTokenException("Token has expired."));
+        when(keycloakApiClient.userProfile(tokenInfo)).thenReturn(new KeycloakUser("foo@bar.com", "Foo Bar"));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("{\"user\": {\"username\": \"foo@bar.com\"}}", response.responseBody(), false);
+    }
+
+    @Test
+    public void shouldFetchUserProfileWhenSigningKeysCanNotBeFetched() throws Exception {
+        final TokenInfo tokenInfo = new TokenInfo("31239032-xycs.xddasdasdasda", 7200, "foo-type", "refresh-xysaddasdjlascdas", "id-token");
+
+        when(request.authConfigs()).thenReturn(Collections.singletonList(authConfig));
+        when(request.tokenInfo()).thenReturn(tokenInfo);
+        when(keycloakConfiguration.useIdTokenClaims()).thenReturn(true);
+        when(keycloakApiClient.userProfileFromIdToken(tokenInfo)).thenThrow(new IOException("Could not fetch signing keys: Api call to `/certs` failed with error: `500`"));
+        when(keycloakApiClient.userProfile(tokenInfo)).thenReturn(new KeycloakUser("foo@bar.com", "Foo Bar"));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("{\"user\": {\"username\": \"foo@bar.com\"}}", response.responseBody(), false);
+    }
+
+    @Test
+    public void shouldAuthenticateOnlyAgainstTheAuthConfigOfTheTokenIssuer() throws Exception {
+        final TokenInfo tokenInfo = new TokenInfo(token("https://sso.example.com/realms/master", "client-id"), 7200, "bearer", "refresh-token");
+        final KeycloakApiClient otherApiClient = otherAuthConfig("other-realm", "https://other.example.com/realms/master", "client-id");
+
+        when(authConfig.getId()).thenReturn("keycloak");
+        when(keycloakConfiguration.clientId()).thenReturn("client-id");
+        when(keycloakApiClient.issuer()).thenReturn("https://sso.example.com/realms/master");
+        when(keycloakApiClient.userProfile(tokenInfo)).thenReturn(new KeycloakUser("foo@bar.com", "Foo Bar"));
+        when(request.authConfigs()).thenReturn(Arrays.asList(otherAuthConfig, authConfig));
+        when(request.tokenInfo()).thenReturn(tokenInfo);
+        when(request.roles()).thenReturn(Arrays.asList(role("admin", "keycloak"), role("viewer", "other-realm")));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("{\"roles\": [\"admin\"], \"user\": {\"username\": \"foo@bar.com\"}}", response.responseBody(), false);
+        verify(otherApiClient, never()).userProfile(any());
+    }
+
+    @Test
+    public void shouldEvaluateRolesOfEveryAuthConfigOfTheTokenIssuer() throws Exception {
+        final TokenInfo tokenInfo = new TokenInfo(token("https://sso.example.com/realms/master", "client-id"), 7200, "bearer", "refresh-token");
+        final KeycloakApiClient otherApiClient = otherAuthConfig("other-client", "https://sso.example.com/realms/master/", "other-client-id");
+
+        when(authConfig.getId()).thenReturn("keycloak");
+        when(keycloakConfiguration.clientId()).thenReturn("client-id");
+        when(keycloakApiClient.issuer()).thenReturn("https://sso.example.com/realms/master");
+        when(keycloakApiClient.userProfile(tokenInfo)).thenReturn(new KeycloakUser("foo@bar.com", "Foo Bar"));
+        when(request.authConfigs()).thenReturn(Arrays.asList(otherAuthConfig, authConfig));
+        when(request.tokenInfo()).thenReturn(tokenInfo);
+        when(request.roles()).thenReturn(Arrays.asList(role("admin", "keycloak"), role("viewer", "other-client")));
+
+        final GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("{\"roles\": [\"admin\", \"viewer\"]}", response.responseBody(), false);
+        verify(otherApiClient, never()).userProfile(any());
+    }
+
+    @Test
+    public void shouldRejectTokenOfUnknownIssuer() throws Exception {
+        final TokenInfo tokenInfo = new TokenInfo(token("https://evil.example.com/realms/master", "client-id"), 7200, "bearer", "refresh-token");
+        final KeycloakApiClient otherApiClient = otherAuthConfig("other-realm", "https://other.example.com/realms/master", "client-id");
+
+        when(keycloakApiClient.issuer()).thenReturn("https://sso.example.com/realms/master");
+        when(request.authConfigs()).thenReturn(Arrays.asList(otherAuthConfig, authConfig));
+        when(request.tokenInfo()).thenReturn(tokenInfo);
+
+        thrown.expect(InvalidTokenException.class);
+        thrown.expectMessage("[Authenticate] Token issuer `https://evil.example.com/realms/master` does not match any auth config.");
+
+        try {
+            executor.execute();
+        } finally {
+            verify(keycloakApiClient, never()).userProfile(any());
+            verify(otherApiClient, never()).userProfile(any());
+        }
+    }
+
+    private KeycloakApiClient otherAuthConfig(String id, String issuer, String clientId) throws Exception {
+        final KeycloakConfiguration otherConfiguration = mock(KeycloakConfiguration.class);
+        final KeycloakApiClient otherApiClient = mock(KeycloakApiClient.class);
+        when(otherAuthConfig.getId()).thenReturn(id);
+        when(otherAuthConfig.getConfiguration()).thenReturn(otherConfiguration);
+        when(otherConfiguration.keycloakApiClient()).thenReturn(otherApiClient);
+        when(otherConfiguration.clientId()).thenReturn(clientId);
+        when(otherApiClient.issuer()).thenReturn(issuer);
+        return otherApiClient;
+    }
+
+    private static String token(String issuer, String authorizedParty) {
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        final String claims = "{\"iss\": \"" + issuer + "\", \"azp\": \"" + authorizedParty + "\"}";
+        return encoder.encodeToString("{\"alg\": \"RS256\"}".getBytes(StandardCharsets.UTF_8)) + '.'
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".c2lnbmF0dXJl";
+    }
+
+    private Role role(String name, String authConfigId) {
+        return Role.fromJSON("{\"name\": \"" + name + "\", \"auth_config_id\": \"" + authConfigId + "\", \"configuration\": {\"Users\": \"foo@bar.com\"}}");
+    }
 }
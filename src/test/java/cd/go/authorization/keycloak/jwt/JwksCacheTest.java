@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.jwt;
+
+import cd.go.authorization.keycloak.KeycloakDiskCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JwksCacheTest {
+    private AtomicLong clock;
+    private AtomicInteger fetches;
+    private JwksCache jwksCache;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new AtomicLong(1_000_000);
+        fetches = new AtomicInteger();
+        jwksCache = new JwksCache(clock::get);
+    }
+
+    @Test
+    public void shouldRefetchKeysWhenKeyIdIsUnknown() throws Exception {
+        final SigningKey oldKey = new SigningKey("old");
+        final SigningKey newKey = new SigningKey("new");
+
+        assertThat(jwksCache.key("old", fetcher(SigningKey.jwks(oldKey))), notNullValue());
+        clock.addAndGet(60_000);
+        assertThat(jwksCache.key("new", fetcher(SigningKey.jwks(oldKey, newKey))), notNullValue());
+        assertThat(jwksCache.key("old", fetcher(SigningKey.jwks(oldKey, newKey))), notNullValue());
+
+        assertThat(fetches.get(), is(2));
+    }
+
+    @Test
+    public void shouldNotRefetchKeysForUnknownKeyIdMoreThanOnceInTheRefetchInterval() throws Exception {
+        final SigningKey key = new SigningKey("known");
+
+        assertThat(jwksCache.key("unknown", fetcher(SigningKey.jwks(key))), nullValue());
+        assertThat(jwksCache.key("unknown", fetcher(SigningKey.jwks(key))), nullValue());
+
+        assertThat(fetches.get(), is(1));
+    }
+
+    @Test
+    public void shouldUseStoredKeysAndRevalidateThemOnce() throws Exception {
+        final SigningKey key = new SigningKey("stored");
+        final KeycloakDiskCache diskCache = mock(KeycloakDiskCache.class);
+        when(diskCache.get(KeycloakDiskCache.Kind.JWKS, "https://example.com/certs")).thenReturn(SigningKey.jwks(key));
+
+        final List<Runnable> revalidations = new ArrayList<>();
+        final JwksCache restarted = new JwksCache("https://example.com/certs", diskCache, revalidations::add, clock::get);
+
+        assertThat(restarted.key("stored", fetcher(SigningKey.jwks(key))), notNullValue());
+        assertThat(restarted.key("stored", fetcher(SigningKey.jwks(key))), notNullValue());
+        assertThat(fetches.get(), is(0));
+        assertThat(revalidations.size(), is(1));
+
+        revalidations.get(0).run();
+        assertThat(fetches.get(), is(1));
+        verify(diskCache).put(eq(KeycloakDiskCache.Kind.JWKS), eq("https://example.com/certs"), eq(SigningKey.jwks(key)), anyLong());
+    }
+
+    private JwksCache.KeySetFetcher fetcher(String jwks) {
+        return () -> {
+            fetches.incrementAndGet();
+            return jwks;
+        };
+    }
+}
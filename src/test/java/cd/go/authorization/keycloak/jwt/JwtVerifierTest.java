@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.jwt;
+
+import cd.go.authorization.keycloak.exceptions.InvalidTokenException;
+import cd.go.authorization.keycloak.exceptions.TokenExpiredException;
+import com.google.gson.JsonObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JwtVerifierTest {
+    private static final String ISSUER = "https://example.com/auth/realms/master";
+    private static final long NOW = 1_600_000_000_000L;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private SigningKey signingKey;
+    private AtomicInteger fetches;
+    private JwtVerifier verifier;
+
+    @Before
+    public void setUp() throws Exception {
+        signingKey = new SigningKey("key-1");
+        fetches = new AtomicInteger();
+        verifier = new JwtVerifier(ISSUER, "client-id", new JwksCache(() -> NOW), () -> {
+            fetches.incrementAndGet();
+            return SigningKey.jwks(signingKey);
+        }, () -> NOW);
+    }
+
+    @Test
+    public void shouldVerifyTokenSignedByRealmKey() throws Exception {
+        final Jwt jwt = verifier.verify(signingKey.sign(SigningKey.claims(ISSUER, "client-id", NOW / 1000 + 300)));
+
+        assertThat(jwt.subject(), is("00uea8uu"));
+        assertThat(jwt.authorizedParty(), is("client-id"));
+    }
+
+    @Test
+    public void shouldFetchSigningKeysOnlyOnce() throws Exception {
+        verifier.verify(signingKey.sign(SigningKey.claims(ISSUER, "client-id", NOW / 1000 + 300)));
+        verifier.verify(signingKey.sign(SigningKey.claims(ISSUER, "client-id", NOW / 1000 + 600)));
+
+        assertThat(fetches.get(), is(1));
+    }
+
+    @Test
+    public void shouldAcceptClientIdAsAudience() throws Exception {
+        final JsonObject claims = SigningKey.claims(ISSUER, "other-client", NOW / 1000 + 300);
+        claims.addProperty("aud", "client-id");
+
+        assertThat(verifier.verify(signingKey.sign(claims)).audience().get(0), is("client-id"));
+    }
+
+    @Test
+    public void shouldRejectExpiredToken() throws Exception {
+        thrown.expect(TokenExpiredException.class);
+
+        verifier.verify(signingKey.sign(SigningKey.claims(ISSUER, "client-id", NOW / 1000 - 60)));
+    }
+
+    @Test
+    public void shouldRejectTokenFromAnotherIssuer() throws Exception {
+        thrown.expect(InvalidTokenException.class);
+        thrown.expectMessage("does not match");
+
+        verifier.verify(signingKey.sign(SigningKey.claims("https://example.com/auth/realms/other", "client-id", NOW / 1000 + 300)));
+    }
+
+    @Test
+    public void shouldRejectTokenForAnotherClient() throws Exception {
+        thrown.expect(InvalidTokenException.class);
+        thrown.expectMessage("Token is not issued for client `client-id`.");
+
+        verifier.verify(signingKey.sign(SigningKey.claims(ISSUER, "other-client", NOW / 1000 + 300)));
+    }
+
+    @Test
+    public void shouldRejectTokenSignedByUnknownKey() throws Exception {
+        final SigningKey forged = new SigningKey("key-1");
+
+        thrown.expect(InvalidTokenException.class);
+        thrown.expectMessage("Token signature is invalid.");
+
+        verifier.verify(forged.sign(SigningKey.claims(ISSUER, "client-id", NOW / 1000 + 300)));
+    }
+}
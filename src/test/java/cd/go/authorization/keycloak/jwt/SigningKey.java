@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.jwt;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+public class SigningKey {
+    private final String keyId;
+    private final KeyPair keyPair;
+
+    public SigningKey(String keyId) throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        this.keyId = keyId;
+        this.keyPair = generator.generateKeyPair();
+    }
+
+    public String keyId() {
+        return keyId;
+    }
+
+    public String sign(JsonObject claims) throws Exception {
+        final JsonObject header = new JsonObject();
+        header.addProperty("alg", "RS256");
+        header.addProperty("typ", "JWT");
+        header.addProperty("kid", keyId);
+
+        final String signingInput = encode(header.toString().getBytes(StandardCharsets.UTF_8)) + "." + encode(claims.toString().getBytes(StandardCharsets.UTF_8));
+        final Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + encode(signature.sign());
+    }
+
+    public JsonObject jwk() {
+        final RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        final JsonObject jwk = new JsonObject();
+        jwk.addProperty("kid", keyId);
+        jwk.addProperty("kty", "RSA");
+        jwk.addProperty("alg", "RS256");
+        jwk.addProperty("use", "sig");
+        jwk.addProperty("n", encode(unsigned(publicKey.getModulus())));
+        jwk.addProperty("e", encode(unsigned(publicKey.getPublicExponent())));
+        return jwk;
+    }
+
+    public static String jwks(SigningKey... keys) {
+        final JsonArray array = new JsonArray();
+        for (SigningKey key : keys) {
+            array.add(key.jwk());
+        }
+        final JsonObject jwks = new JsonObject();
+        jwks.add("keys", array);
+        return jwks.toString();
+    }
+
+    public static JsonObject claims(String issuer, String clientId, long expiresAt) {
+        final JsonObject claims = new JsonObject();
+        claims.addProperty("iss", issuer);
+        claims.addProperty("aud", "account");
+        claims.addProperty("azp", clientId);
+        claims.addProperty("sub", "00uea8uu");
+        claims.addProperty("exp", expiresAt);
+        return claims;
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        final byte[] bytes = value.toByteArray();
+        return bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
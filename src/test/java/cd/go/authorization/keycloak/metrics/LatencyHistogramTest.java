@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldMapEveryValueToBucketWhoseUpperBoundCoversIt() {
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            final long upperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertThat(LatencyHistogram.bucketFor(previousUpperBound + 1), is(bucket));
+            assertThat(LatencyHistogram.bucketFor(upperBound), is(bucket));
+            previousUpperBound = upperBound;
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count(), is(100L));
+        assertThat(snapshot.meanMicros(), is(50_500L));
+        assertThat(snapshot.p50Micros(), allOf(greaterThanOrEqualTo(50_000L), lessThanOrEqualTo(57_000L)));
+        assertThat(snapshot.p99Micros(), allOf(greaterThanOrEqualTo(99_000L), lessThanOrEqualTo(100_000L)));
+        assertThat(snapshot.maxMicros(), is(100_000L));
+    }
+
+    @Test
+    public void shouldReportZerosWhenEmpty() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertThat(snapshot.count(), is(0L));
+        assertThat(snapshot.p99Micros(), is(0L));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.metrics;
+
+import com.google.gson.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PluginMetricsTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldTimeFuturesAndCountErrors() {
+        final PluginMetrics metrics = new PluginMetrics();
+
+        metrics.time(PluginMetrics.KEYCLOAK_TOKEN, CompletableFuture.completedFuture("token"));
+        final CompletableFuture<String> failed = new CompletableFuture<>();
+        metrics.time(PluginMetrics.KEYCLOAK_TOKEN, failed);
+        failed.completeExceptionally(new IOException("boom"));
+
+        assertThat(metrics.histogram(PluginMetrics.KEYCLOAK_TOKEN).count(), is(2L));
+        assertThat(metrics.count(PluginMetrics.KEYCLOAK_TOKEN + PluginMetrics.ERRORS_SUFFIX), is(1L));
+    }
+
+    @Test
+    public void shouldExportHistogramsCountersAndGaugesAsJSON() {
+        final PluginMetrics metrics = new PluginMetrics();
+        metrics.histogram("request.authenticate-user").record(2_000_000);
+        metrics.cacheLookup(PluginMetrics.ROLE_DECISION_CACHE, true);
+        metrics.cacheLookup(PluginMetrics.ROLE_DECISION_CACHE, true);
+        metrics.counter("retries.rejected", () -> 3);
+        metrics.gauge("http.connections", () -> 4);
+
+        final JsonObject json = metrics.toJSON();
+
+        assertThat(json.getAsJsonObject("latencies").getAsJsonObject("request.authenticate-user").get("max_micros").getAsLong(), is(2000L));
+        assertThat(json.getAsJsonObject("counters").get("cache.role-decisions.hits").getAsLong(), is(2L));
+        assertThat(json.getAsJsonObject("counters").get("retries.rejected").getAsLong(), is(3L));
+        assertThat(json.getAsJsonObject("gauges").get("http.connections").getAsLong(), is(4L));
+        assertThat(metrics.summary(), containsString("request.authenticate-user count=1 p50=2.0ms"));
+    }
+
+    @Test
+    public void shouldWriteJSONSnapshotToMetricsFile() throws Exception {
+        final PluginMetrics metrics = new PluginMetrics();
+        metrics.increment("request.authenticate-user.errors");
+        final Path metricsFile = temporaryFolder.getRoot().toPath().resolve("metrics.json");
+
+        new MetricsReporter(metrics, metricsFile).report();
+
+        assertThat(new String(Files.readAllBytes(metricsFile), StandardCharsets.UTF_8), containsString("\"request.authenticate-user.errors\":1"));
+    }
+}
@@ -24,6 +24,8 @@ import java.util.Map;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class KeycloakConfigurationTest {
@@ -41,6 +43,17 @@ public class KeycloakConfigurationTest {
         assertThat(keycloakConfiguration.clientSecret(), is("client-secret"));
     }
 
+    @Test
+    public void shouldReadCommaSeparatedKeycloakEndpoints() throws Exception {
+        final KeycloakConfiguration keycloakConfiguration = KeycloakConfiguration.fromJSON("{\n" +
+                "  \"KeycloakEndpoint\": \"https://kc1.example.co.in, https://kc2.example.co.in,\",\n" +
+                "  \"ClientId\": \"client-id\"\n" +
+                "}");
+
+        assertThat(keycloakConfiguration.keycloakEndpoints(), contains("https://kc1.example.co.in", "https://kc2.example.co.in"));
+        assertThat(keycloakConfiguration.keycloakEndpoint(), is("https://kc1.example.co.in"));
+    }
+
     @Test
     public void shouldSerializeToJSON() throws Exception {
         KeycloakConfiguration keycloakConfiguration = new KeycloakConfiguration(
@@ -67,4 +80,36 @@ public class KeycloakConfigurationTest {
         assertThat(properties, hasEntry("ClientId", "client-id"));
         assertThat(properties, hasEntry("ClientSecret", "client-secret"));
     }
+
+    @Test
+    public void shouldResolveIdenticalConfigurationsToSameInstance() throws Exception {
+        final String json = "{\"KeycloakEndpoint\": \"https://example.co.in\", \"KeycloakRealm\": \"master\", \"ClientId\": \"client-id\"}";
+
+        final KeycloakConfiguration first = KeycloakConfiguration.fromJSON(json);
+        final KeycloakConfiguration second = KeycloakConfiguration.fromJSON(json);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.keycloakApiClient(), is(sameInstance(first.keycloakApiClient())));
+    }
+
+    @Test
+    public void shouldNotShareInstanceBetweenDifferentConfigurations() throws Exception {
+        final KeycloakConfiguration first = KeycloakConfiguration.fromJSON("{\"KeycloakEndpoint\": \"https://example.co.in\", \"ClientId\": \"a\"}");
+        final KeycloakConfiguration second = KeycloakConfiguration.fromJSON("{\"KeycloakEndpoint\": \"https://example.co.in\", \"ClientId\": \"b\"}");
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(second.clientId(), is("b"));
+    }
+
+    @Test
+    public void shouldRoundTripThroughJSON() throws Exception {
+        final String json = "{\"KeycloakEndpoint\": \"https://example.co.in\", \"KeycloakRealm\": \"master\", " +
+                "\"ClientId\": \"client-id\", \"ClientSecret\": \"secret\", \"LocalTokenValidation\": \"true\", \"UseIdTokenClaims\": \"false\"}";
+
+        final KeycloakConfiguration configuration = KeycloakConfiguration.fromJSON(json);
+
+        JSONAssert.assertEquals(json, configuration.toJSON(), true);
+        assertThat(configuration.toProperties().size(), is(6));
+        assertThat(configuration.localTokenValidation(), is(true));
+    }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.models;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class KeycloakRoleConfigurationTest {
+
+    @Test
+    public void shouldParseGroupsAndUsersOnce() {
+        final KeycloakRoleConfiguration configuration = KeycloakRoleConfiguration.fromJSON("{\"Groups\": \"admins , devs\", \"Users\": \"Bob@Example.com,alice@example.com\"}");
+
+        assertThat(configuration.groups(), contains("admins", "devs"));
+        assertThat(configuration.users(), contains("bob@example.com", "alice@example.com"));
+        assertThat(configuration.users(), is(sameInstance(configuration.users())));
+    }
+
+    @Test
+    public void shouldResolveIdenticalConfigurationsToSameInstance() {
+        final String json = "{\"Groups\": \"admins\", \"Users\": \"bob@example.com\"}";
+
+        assertThat(KeycloakRoleConfiguration.fromJSON(json), is(sameInstance(KeycloakRoleConfiguration.fromJSON(json))));
+    }
+
+    @Test
+    public void shouldConvertToProperties() {
+        final KeycloakRoleConfiguration configuration = new KeycloakRoleConfiguration("admins", null);
+
+        assertThat(configuration.toProperties().size(), is(1));
+        assertThat(configuration.toProperties(), hasEntry("Groups", "admins"));
+        assertThat(configuration.toJSON(), is("{\"Groups\":\"admins\"}"));
+    }
+}
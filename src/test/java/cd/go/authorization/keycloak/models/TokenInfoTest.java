@@ -19,6 +19,8 @@ package cd.go.authorization.keycloak.models;
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.io.StringReader;
+
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -52,4 +54,34 @@ public class TokenInfoTest {
 
         JSONAssert.assertEquals(expectedJSON, tokenInfo.toJSON(), true);
     }
+
+    @Test
+    public void shouldKeepIdToken() throws Exception {
+        final TokenInfo tokenInfo = TokenInfo.fromJSON("{\n" +
+                "  \"access_token\": \"31239032-xycs.xddasdasdasda\",\n" +
+                "  \"expires_in\": 7200,\n" +
+                "  \"token_type\": \"foo-type\",\n" +
+                "  \"refresh_token\": \"refresh-xysaddasdjlascdas\",\n" +
+                "  \"id_token\": \"id-token-xysaddasdjlascdas\"\n" +
+                "}");
+
+        assertThat(tokenInfo.idToken(), is("id-token-xysaddasdjlascdas"));
+        JSONAssert.assertEquals("{\"id_token\": \"id-token-xysaddasdjlascdas\"}", tokenInfo.toJSON(), false);
+    }
+
+    @Test
+    public void shouldReadFromStreamSkippingUnknownFields() throws Exception {
+        final TokenInfo tokenInfo = TokenInfo.fromJSON(new StringReader("{\n" +
+                "  \"access_token\": \"31239032-xycs.xddasdasdasda\",\n" +
+                "  \"expires_in\": 300,\n" +
+                "  \"refresh_expires_in\": 1800,\n" +
+                "  \"token_type\": \"Bearer\",\n" +
+                "  \"not-before-policy\": 0,\n" +
+                "  \"session_state\": \"2c4b3b1a\",\n" +
+                "  \"authorization\": {\"permissions\": [{\"rsid\": \"1\"}]},\n" +
+                "  \"refresh_token\": null\n" +
+                "}"));
+
+        assertThat(tokenInfo, is(new TokenInfo("31239032-xycs.xddasdasdasda", 300, "Bearer", null)));
+    }
 }
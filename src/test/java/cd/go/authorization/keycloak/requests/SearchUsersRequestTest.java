@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.requests;
+
+import cd.go.authorization.keycloak.executors.SearchUsersRequestExecutor;
+import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SearchUsersRequestTest {
+    @Mock
+    private GoPluginApiRequest apiRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+    }
+
+    @Test
+    public void shouldDeserializeGoPluginApiRequestToSearchUsersRequest() throws Exception {
+        String requestBody = "{\n" +
+                "  \"search_term\": \"bob\",\n" +
+                "  \"auth_configs\": [\n" +
+                "    {\n" +
+                "      \"id\": \"keycloak-auth-config\",\n" +
+                "      \"configuration\": {\n" +
+                "        \"KeycloakEndpoint\": \"https://example.co.in\",\n" +
+                "        \"ClientId\": \"client-id\",\n" +
+                "        \"ClientSecret\": \"client-secret\"\n" +
+                "      }\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}";
+
+        when(apiRequest.requestBody()).thenReturn(requestBody);
+
+        final SearchUsersRequest request = SearchUsersRequest.from(apiRequest);
+
+        assertThat(request.searchTerm(), is("bob"));
+        assertThat(request.authConfigs(), hasSize(1));
+        assertThat(request.authConfigs().get(0).getId(), is("keycloak-auth-config"));
+        assertThat(request.executor(), instanceOf(SearchUsersRequestExecutor.class));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CircuitBreakerTest {
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, 10_000, clock::get);
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.state(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquire(), is(false));
+        assertThat(circuitBreaker.retryAfterMillis(), is(10_000L));
+    }
+
+    @Test
+    public void shouldResetFailureCountOnSuccess() {
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.state(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldLetSingleProbeThroughOnceOpenPeriodIsOver() {
+        open();
+        clock.addAndGet(10_000);
+
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+        assertThat(circuitBreaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void shouldCloseWhenProbeSucceeds() {
+        open();
+        clock.addAndGet(10_000);
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onSuccess();
+
+        assertThat(circuitBreaker.state(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void shouldOpenAgainWhenProbeFails() {
+        open();
+        clock.addAndGet(10_000);
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.state(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void shouldLetNextCallProbeWhenProbeIsCancelled() {
+        open();
+        clock.addAndGet(10_000);
+        circuitBreaker.tryAcquire();
+        assertThat(circuitBreaker.isAvailable(), is(false));
+
+        circuitBreaker.onCancel();
+
+        assertThat(circuitBreaker.state(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.isAvailable(), is(true));
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void shouldOnlyBeAvailableWhenCallsWouldBeLetThrough() {
+        assertThat(circuitBreaker.isAvailable(), is(true));
+
+        open();
+        assertThat(circuitBreaker.isAvailable(), is(false));
+
+        clock.addAndGet(10_000);
+        assertThat(circuitBreaker.isAvailable(), is(true));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ExpiringCacheTest {
+    private AtomicLong clock;
+    private ExpiringCache<String, String> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new AtomicLong(1_000);
+        cache = new ExpiringCache<>(10, clock::get);
+    }
+
+    @Test
+    public void shouldReturnValueUntilItExpires() throws Exception {
+        cache.put("key", "value", 2_000);
+
+        assertThat(cache.get("key"), is("value"));
+        clock.set(2_000);
+        assertThat(cache.get("key"), nullValue());
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldNotStoreAlreadyExpiredValues() throws Exception {
+        cache.put("key", "value", 1_000);
+
+        assertThat(cache.get("key"), nullValue());
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() throws Exception {
+        cache.put("key", "value", 2_000);
+
+        cache.get("key");
+        cache.get("key");
+        cache.get("unknown");
+
+        assertThat(cache.hits(), is(2L));
+        assertThat(cache.misses(), is(1L));
+    }
+
+    @Test
+    public void shouldEvictEntriesClosestToExpiryWhenFull() throws Exception {
+        for (int i = 0; i < 11; i++) {
+            cache.put("key-" + i, "value-" + i, 2_000 + i);
+        }
+
+        assertThat(cache.size(), is(9));
+        assertThat(cache.evictions(), is(2L));
+        assertThat(cache.get("key-0"), nullValue());
+        assertThat(cache.get("key-1"), nullValue());
+        assertThat(cache.get("key-10"), is("value-10"));
+    }
+
+    @Test
+    public void shouldPurgeExpiredEntriesBeforeEvictingLiveOnes() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            cache.put("key-" + i, "value-" + i, i < 5 ? 1_500 : 5_000);
+        }
+        clock.set(1_600);
+
+        cache.put("key-10", "value-10", 5_000);
+
+        assertThat(cache.size(), is(6));
+        assertThat(cache.evictions(), is(0L));
+    }
+}
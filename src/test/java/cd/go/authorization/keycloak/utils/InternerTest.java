@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class InternerTest {
+
+    @Test
+    public void shouldReturnCanonicalInstanceForEqualKeys() {
+        final Interner<Object> interner = new Interner<>(10);
+
+        final Object first = interner.intern("a", Object::new);
+
+        assertThat(interner.intern("a", Object::new), is(first));
+        assertThat(interner.intern("b", Object::new), is(not(first)));
+        assertThat(interner.size(), is(2));
+    }
+
+    @Test
+    public void shouldClearWhenFull() {
+        final Interner<Object> interner = new Interner<>(2);
+
+        interner.intern("a", Object::new);
+        interner.intern("b", Object::new);
+        interner.intern("c", Object::new);
+
+        assertThat(interner.size(), is(1));
+    }
+
+    @Test
+    public void shouldBuildUnambiguousKeys() {
+        assertThat(Interner.key("a,b", "c"), is(not(Interner.key("a", "b,c"))));
+        assertThat(Interner.key("ab", "c"), is(not(Interner.key("a", "bc"))));
+        assertThat(Interner.key(null, "a"), is(not(Interner.key("", "a"))));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PluginLoggerTest {
+
+    @Test
+    public void shouldNotEvaluateSupplierUntilMessageIsFormatted() {
+        final Logger logger = mock(Logger.class);
+        final AtomicInteger evaluations = new AtomicInteger();
+
+        new PluginLogger(logger).debug(() -> "evaluated " + evaluations.incrementAndGet());
+
+        verify(logger).debug(eq("{}"), ArgumentMatchers.<Object>any());
+        assertThat(evaluations.get(), is(0));
+    }
+
+    @Test
+    public void shouldFormatLazyArgumentOnToString() {
+        final AtomicInteger evaluations = new AtomicInteger();
+        final Object message = PluginLogger.lazy(() -> "evaluated " + evaluations.incrementAndGet());
+
+        assertThat(evaluations.get(), is(0));
+        assertThat(message.toString(), is("evaluated 1"));
+    }
+
+    @Test
+    public void shouldLogFingerprintInsteadOfToken() {
+        assertThat(PluginLogger.fingerprint("access-token").toString(), is(Util.sha256("access-token").substring(0, 8)));
+        assertThat(PluginLogger.fingerprint(null).toString(), is("none"));
+    }
+}
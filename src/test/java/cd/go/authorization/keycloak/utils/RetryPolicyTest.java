@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void shouldAllowRetriesUpToMaxAttempts() {
+        final RetryPolicy retryPolicy = new RetryPolicy(3, 100, 1000, new RetryBudget(0.1, 10));
+
+        assertThat(retryPolicy.canRetry(1), is(true));
+        assertThat(retryPolicy.canRetry(2), is(true));
+        assertThat(retryPolicy.canRetry(3), is(false));
+    }
+
+    @Test
+    public void shouldStopRetryingOnceBudgetIsSpent() {
+        final RetryBudget budget = new RetryBudget(0.5, 1);
+        final RetryPolicy retryPolicy = new RetryPolicy(3, 100, 1000, budget);
+
+        assertThat(retryPolicy.canRetry(1), is(true));
+        assertThat(retryPolicy.canRetry(1), is(false));
+        assertThat(budget.rejected(), is(1L));
+
+        retryPolicy.onRequest();
+        retryPolicy.onRequest();
+
+        assertThat(retryPolicy.canRetry(1), is(true));
+    }
+
+    @Test
+    public void shouldNotBankMoreThanMaxRetries() {
+        final RetryBudget budget = new RetryBudget(1, 2);
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+
+        assertThat(budget.tryWithdraw(), is(true));
+        assertThat(budget.tryWithdraw(), is(true));
+        assertThat(budget.tryWithdraw(), is(false));
+    }
+
+    @Test
+    public void shouldJitterBackoffBelowExponentialCeiling() {
+        final RetryPolicy retryPolicy = new RetryPolicy(10, 100, 1000, new RetryBudget(0.1, 10));
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(retryPolicy.backoffMillis(1), lessThanOrEqualTo(100L));
+            assertThat(retryPolicy.backoffMillis(3), lessThanOrEqualTo(400L));
+            assertThat(retryPolicy.backoffMillis(8), lessThanOrEqualTo(1000L));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SecureTokensTest {
+
+    @Test
+    public void shouldGenerateDistinctUrlSafeValues() {
+        final Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            final String token = SecureTokens.next();
+            assertThat(token.matches("[A-Za-z0-9_-]{22}"), is(true));
+            tokens.add(token);
+        }
+
+        assertThat(tokens.size(), is(1000));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.authorization.keycloak.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void shouldShareInFlightCallBetweenConcurrentCallers() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "value";
+            }));
+            started.await(5, TimeUnit.SECONDS);
+
+            final Future<String> second = executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                return "other-value";
+            }));
+            waitUntilCoalesced(singleFlight);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS), is("value"));
+            assertThat(second.get(5, TimeUnit.SECONDS), is("value"));
+            assertThat(calls.get(), is(1));
+            assertThat(singleFlight.coalesced(), is(1L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldShareFailureWithCoalescedCallers() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                throw new IOException("connection reset");
+            }));
+            started.await(5, TimeUnit.SECONDS);
+
+            final Future<String> second = executor.submit(() -> singleFlight.execute("key", () -> "other-value"));
+            waitUntilCoalesced(singleFlight);
+            release.countDown();
+
+            assertFailsWithIOException(first);
+            assertFailsWithIOException(second);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRunCallsAgainAfterPreviousCallCompleted() throws Exception {
+        final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("key", calls::incrementAndGet);
+        singleFlight.execute("key", calls::incrementAndGet);
+
+        assertThat(calls.get(), is(2));
+        assertThat(singleFlight.coalesced(), is(0L));
+    }
+
+    private static void assertFailsWithIOException(Future<String> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected call to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+    }
+
+    private static void waitUntilCoalesced(SingleFlight<?, ?> singleFlight) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (singleFlight.coalesced() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}